@@ -0,0 +1,253 @@
+package shujiaw;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 总表申请人索引。
+ * <p>
+ * Lookup by ID number is exact. When the survey row has no usable ID, applicants are matched by name and district:
+ * both are normalized (NFKC, whitespace and name separators removed) and candidates are blocked by name bigram, so
+ * only a handful of applicants are scored per lookup. The district only adds a bonus to the score.
+ */
+public class ApplicantIndex {
+
+    public static final int SQH = 0;
+    public static final int NAME = 1;
+    public static final int GENDER = 2;
+    public static final int AGE = 3;
+    public static final int DISTRICT = 4;
+    public static final int ID = 5;
+
+    // A fuzzy (non exact-name) candidate is only resolved automatically above this score
+    private static final double AUTO_RESOLVE_SCORE = 0.8;
+
+    private final List<String[]> applicants = new ArrayList<String[]>();
+    private final List<String> normalizedDistricts = new ArrayList<String>();
+    private final List<Integer> gramCounts = new ArrayList<Integer>();
+
+    private final Map<String, String[]> idMap = new HashMap<String, String[]>();
+    private final Map<String, List<Integer>> nameBlocks = new HashMap<String, List<Integer>>();
+    private final Map<String, List<Integer>> gramBlocks = new HashMap<String, List<Integer>>();
+
+    /**
+     * @param args applicant columns, indexed by {@link #SQH}, {@link #NAME}, ... {@link #ID}
+     */
+    public void add(String[] args) {
+        int pos = applicants.size();
+        String name = normalizeName(args[NAME]);
+        String district = normalizeDistrict(args[DISTRICT]);
+        applicants.add(args);
+        normalizedDistricts.add(district);
+
+        idMap.put(args[ID], args);
+        Set<String> grams = grams(name);
+        gramCounts.add(grams.size());
+        if (name.isEmpty()) {
+            return;
+        }
+        addToBlock(nameBlocks, name, pos);
+        for (String gram : grams) {
+            addToBlock(gramBlocks, gram, pos);
+        }
+    }
+
+    public int size() {
+        return applicants.size();
+    }
+
+    /**
+     * @return a hash of all applicant rows, changes whenever the 总表 content changes
+     */
+    public long fingerprint() {
+        long hash = applicants.size();
+        for (String[] args : applicants) {
+            hash = ValidationState.combine(hash, ValidationState.hash(args));
+        }
+        return hash;
+    }
+
+    public String[] findById(String id) {
+        if (id == null) {
+            return null;
+        }
+        return idMap.get(id.trim());
+    }
+
+    /**
+     * Resolves a single applicant by name and district, or returns null if the match is missing or ambiguous.
+     */
+    public String[] resolve(String name, String district) {
+        List<Candidate> candidates = candidates(name, district, 2);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Candidate best = candidates.get(0);
+        if (candidates.size() > 1 && candidates.get(1).score == best.score) {
+            return null;
+        }
+        if (best.exactName && (best.districtMatched || candidates.size() == 1)) {
+            return best.applicant;
+        }
+        if (best.districtMatched && best.nameScore >= AUTO_RESOLVE_SCORE) {
+            return best.applicant;
+        }
+        return null;
+    }
+
+    /**
+     * Returns up to {@code limit} candidates, best first.
+     * <p>
+     * Exact (normalized) name hits come first; if there are none, applicants sharing a name bigram are scored by the
+     * Dice coefficient of the bigram sets. A matching district adds to the score either way.
+     */
+    public List<Candidate> candidates(String name, String district, int limit) {
+        String normalizedName = normalizeName(name);
+        if (normalizedName.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String normalizedDistrict = normalizeDistrict(district);
+        List<Candidate> result = new ArrayList<Candidate>();
+
+        List<Integer> exact = nameBlocks.get(normalizedName);
+        if (exact != null) {
+            for (Integer pos : exact) {
+                result.add(candidate(pos, 1.0, true, normalizedDistrict));
+            }
+        } else {
+            Set<String> queryGrams = grams(normalizedName);
+            Map<Integer, Integer> shared = new HashMap<Integer, Integer>();
+            // Every applicant is counted over all shared grams, whatever the district, so Dice scores are comparable
+            for (String gram : queryGrams) {
+                List<Integer> block = gramBlocks.get(gram);
+                if (block == null) {
+                    continue;
+                }
+                for (Integer pos : block) {
+                    Integer count = shared.get(pos);
+                    shared.put(pos, count == null ? 1 : count + 1);
+                }
+            }
+            for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+                int candidateGrams = gramCounts.get(entry.getKey());
+                double dice = 2.0 * entry.getValue() / (queryGrams.size() + candidateGrams);
+                result.add(candidate(entry.getKey(), dice, false, normalizedDistrict));
+            }
+        }
+
+        Collections.sort(result);
+        return result.size() > limit ? new ArrayList<Candidate>(result.subList(0, limit)) : result;
+    }
+
+    private Candidate candidate(int pos, double nameScore, boolean exactName, String normalizedDistrict) {
+        String applicantDistrict = normalizedDistricts.get(pos);
+        boolean districtMatched = !normalizedDistrict.isEmpty() && !applicantDistrict.isEmpty()
+                && (applicantDistrict.contains(normalizedDistrict) || normalizedDistrict.contains(applicantDistrict));
+        double score = nameScore + (districtMatched ? 0.5 : 0);
+        return new Candidate(applicants.get(pos), nameScore, score, exactName, districtMatched);
+    }
+
+    private static void addToBlock(Map<String, List<Integer>> blocks, String key, int pos) {
+        List<Integer> block = blocks.get(key);
+        if (block == null) {
+            block = new ArrayList<Integer>(2);
+            blocks.put(key, block);
+        }
+        block.add(pos);
+    }
+
+    // Bigrams of the name; a single character name is its own gram
+    private static Set<String> grams(String name) {
+        Set<String> grams = new LinkedHashSet<String>();
+        if (name.length() < 2) {
+            grams.add(name);
+            return grams;
+        }
+        for (int i = 0; i + 2 <= name.length(); i++) {
+            grams.add(name.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    static String normalizeName(String str) {
+        if (str == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(str, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            // Skip whitespace and the separators used in transliterated names (· • ・ .)
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)
+                    || c == '·' || c == '•' || c == '・' || c == '.' || c == '-') {
+                continue;
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    static String normalizeDistrict(String str) {
+        String normalized = normalizeName(str);
+        // "上海市黄浦区" and "黄浦" should meet in the middle
+        if (normalized.startsWith("上海市")) {
+            normalized = normalized.substring(3);
+        }
+        if (normalized.length() > 1 && (normalized.endsWith("区") || normalized.endsWith("县"))) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    public static class Candidate implements Comparable<Candidate> {
+        private final String[] applicant;
+        private final double nameScore;
+        private final double score;
+        private final boolean exactName;
+        private final boolean districtMatched;
+
+        Candidate(String[] applicant, double nameScore, double score, boolean exactName, boolean districtMatched) {
+            this.applicant = applicant;
+            this.nameScore = nameScore;
+            this.score = score;
+            this.exactName = exactName;
+            this.districtMatched = districtMatched;
+        }
+
+        public String[] getApplicant() {
+            return applicant;
+        }
+
+        public double getNameScore() {
+            return nameScore;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public boolean isExactName() {
+            return exactName;
+        }
+
+        public boolean isDistrictMatched() {
+            return districtMatched;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(o.score, score);
+        }
+
+        @Override
+        public String toString() {
+            return applicant[NAME] + "/" + applicant[DISTRICT] + "/" + applicant[SQH];
+        }
+    }
+}
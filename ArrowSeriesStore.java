@@ -0,0 +1,167 @@
+package fundSpider;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.message.ArrowBlock;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads fund series from the Arrow IPC files written by {@link FundArrowExporter}.
+ * <p>
+ * Opening the store reads every record batch once and remembers, per batch, the range of dictionary indexes of the
+ * fund codes in it. A lookup then only loads the few batches per year file whose range covers the fund, which is a
+ * handful of 64k-row batches instead of the whole export. Files are read {@code part-full} first, so a
+ * {@code part-YYYYMMDD} file appended later wins for the same day. Call {@link #refresh} after new files were
+ * appended.
+ */
+public class ArrowSeriesStore implements FundSeriesStore, AutoCloseable {
+
+    private final Path arrowDir;
+    private final BufferAllocator allocator = new RootAllocator();
+    private volatile List<FileIndex> files = Collections.emptyList();
+
+    public ArrowSeriesStore(Path exportDir) throws IOException {
+        this.arrowDir = exportDir.resolve("arrow");
+        refresh();
+    }
+
+    public synchronized void refresh() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        if (Files.isDirectory(arrowDir)) {
+            try (DirectoryStream<Path> years = Files.newDirectoryStream(arrowDir, "year=*")) {
+                for (Path year : years) {
+                    try (DirectoryStream<Path> parts = Files.newDirectoryStream(year, "part-*.arrow")) {
+                        for (Path part : parts) {
+                            paths.add(part);
+                        }
+                    }
+                }
+            }
+        }
+        // part-full first, then the appended days in date order
+        paths.sort(Comparator.comparing((Path p) -> !p.getFileName().toString().equals("part-full.arrow"))
+                .thenComparing(p -> p.getFileName().toString()));
+        List<FileIndex> index = new ArrayList<>();
+        for (Path path : paths) {
+            index.add(index(path));
+        }
+        files = index;
+    }
+
+    @Override
+    public FundSeries load(String code) throws IOException {
+        FundSeries.Builder builder = null;
+        for (FileIndex file : files) {
+            Integer found = file.codes.get(code);
+            if (found == null) {
+                continue;
+            }
+            int codeIndex = found;
+            List<Integer> blocks = new ArrayList<>();
+            for (int b = 0; b < file.minIndex.length; b++) {
+                if (codeIndex >= file.minIndex[b] && codeIndex <= file.maxIndex[b]) {
+                    blocks.add(b);
+                }
+            }
+            if (blocks.isEmpty()) {
+                continue;
+            }
+            if (builder == null) {
+                builder = new FundSeries.Builder(code);
+            }
+            try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ);
+                 ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+                VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                List<ArrowBlock> recordBlocks = reader.getRecordBlocks();
+                for (int b : blocks) {
+                    reader.loadRecordBatch(recordBlocks.get(b));
+                    IntVector codes = (IntVector) root.getVector("fund_code");
+                    DateDayVector dates = (DateDayVector) root.getVector("value_date");
+                    Float8Vector value = (Float8Vector) root.getVector("value");
+                    Float8Vector aggregateValue = (Float8Vector) root.getVector("aggregate_value");
+                    Float8Vector dailyGrowth = (Float8Vector) root.getVector("daily_growth");
+                    for (int i = 0, n = root.getRowCount(); i < n; i++) {
+                        if (codes.get(i) == codeIndex) {
+                            builder.add(dates.get(i), get(value, i), get(aggregateValue, i), get(dailyGrowth, i));
+                        }
+                    }
+                }
+            }
+        }
+        return builder == null ? null : builder.build();
+    }
+
+    @Override
+    public void close() {
+        allocator.close();
+    }
+
+    private static double get(Float8Vector vector, int i) {
+        return vector.isNull(i) ? Double.NaN : vector.get(i);
+    }
+
+    private FileIndex index(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            Map<String, Integer> codes = new HashMap<>();
+            for (Dictionary dictionary : reader.getDictionaryVectors().values()) {
+                VarCharVector vector = (VarCharVector) dictionary.getVector();
+                for (int i = 0; i < vector.getValueCount(); i++) {
+                    codes.put(new String(vector.get(i), StandardCharsets.UTF_8), i);
+                }
+            }
+            List<ArrowBlock> blocks = reader.getRecordBlocks();
+            int[] minIndex = new int[blocks.size()];
+            int[] maxIndex = new int[blocks.size()];
+            for (int b = 0; b < blocks.size(); b++) {
+                reader.loadRecordBatch(blocks.get(b));
+                IntVector codeVector = (IntVector) root.getVector("fund_code");
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int i = 0, n = root.getRowCount(); i < n; i++) {
+                    int c = codeVector.get(i);
+                    min = Math.min(min, c);
+                    max = Math.max(max, c);
+                }
+                minIndex[b] = min;
+                maxIndex[b] = max;
+            }
+            return new FileIndex(path, codes, minIndex, maxIndex);
+        }
+    }
+
+    private static class FileIndex {
+        final Path path;
+        final Map<String, Integer> codes;
+        final int[] minIndex;
+        final int[] maxIndex;
+
+        FileIndex(Path path, Map<String, Integer> codes, int[] minIndex, int[] maxIndex) {
+            this.path = path;
+            this.codes = codes;
+            this.minIndex = minIndex;
+            this.maxIndex = maxIndex;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package shujiaw;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+/**
+ * 批量转换：不启动界面，把一个目录下的问卷星导出文件全部转换。
+ * <p>
+ * The reference data is loaded once into a {@link ConversionEngine} and shared by a fixed pool of workers. For every
+ * survey file the revised CSV (or the CSV to fix plus the error report) is written to the output directory, and the
+ * XML is generated for files without errors. With {@code -watch} the directory is kept open and new or changed exports
+ * are converted as soon as they have stopped growing. At the end the rule statistics are printed and saved as JSON;
+ * {@code -jmx} also publishes them as the MBean {@code shujiaw:type=RuleMetrics} while the batch runs.
+ * <pre>
+ * BatchConverter &lt;dir&gt; [-out dir] [-threads n] [-watch] [-jmx]
+ *                [-conf conf.properties] [-applicants applicants.xlsx] [-assessments assessments.xls]
+ * </pre>
+ */
+public class BatchConverter {
+
+    // Files written by the converter itself, never taken as input
+    private static final String[] OUTPUT_SUFFIXES = {"修订后的文件.csv", "需修改后使用.csv", "错误报告.csv"};
+    private static final String XML_SUFFIX = "生成后的文件.xml";
+    private static final String RULE_REPORT = "规则统计.json";
+    // A watched file is converted once it has not changed for this long
+    private static final long QUIET_MILLIS = 2000;
+
+    private final ConversionEngine engine;
+    private final File outputDir;
+    private final ThreadPoolExecutor executor;
+    // Absolute path of every export being converted -> whether it was submitted again meanwhile
+    private final Map<String, Boolean> inFlight = new HashMap<String, Boolean>();
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final long start = System.nanoTime();
+
+    public BatchConverter(ConversionEngine engine, File outputDir, int threads) {
+        this.engine = engine;
+        this.outputDir = outputDir;
+        // Bounded queue, the submitting thread converts itself when the workers are behind
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args[0].startsWith("-")) {
+            System.err.println("用法：BatchConverter <目录> [-out 目录] [-threads n] [-watch] [-jmx] "
+                    + "[-conf conf.properties] [-applicants applicants.xlsx] [-assessments assessments.xls]");
+            System.exit(1);
+        }
+        List<String> options = Arrays.asList(args);
+        File inputDir = new File(args[0]);
+        File outputDir = new File(option(options, "-out", new File(inputDir, "converted").getPath()));
+        int threads = Integer.parseInt(option(options, "-threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("无法创建输出目录：" + outputDir);
+        }
+
+        long loadStart = System.nanoTime();
+        ConversionEngine engine = ConversionEngine.load(option(options, "-conf", "conf.properties"),
+                option(options, "-applicants", "applicants.xlsx"), option(options, "-assessments", "assessments.xls"));
+        System.out.printf("读取配置和总表耗时%d毫秒%n", (System.nanoTime() - loadStart) / 1000000);
+
+        if (options.contains("-jmx")) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(engine.getMetrics(),
+                    new ObjectName("shujiaw:type=RuleMetrics"));
+        }
+
+        final BatchConverter batch = new BatchConverter(engine, outputDir, threads);
+        if (options.contains("-watch")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    batch.shutdown();
+                    batch.printSummary();
+                    batch.writeRuleReport();
+                }
+            }));
+            batch.watch(inputDir.toPath());
+        } else {
+            batch.convertAll(inputDir);
+            batch.shutdown();
+            batch.printSummary();
+            batch.writeRuleReport();
+        }
+    }
+
+    /**
+     * Converts every survey export currently in {@code dir}.
+     */
+    public void convertAll(File dir) {
+        File[] inputs = dir.listFiles();
+        if (inputs == null) {
+            return;
+        }
+        Arrays.sort(inputs);
+        for (File input : inputs) {
+            if (isInput(input)) {
+                submit(input);
+            }
+        }
+    }
+
+    /**
+     * Converts the existing exports, then every export created or modified in {@code dir} until interrupted.
+     */
+    public void watch(Path dir) throws IOException, InterruptedException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        try {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            convertAll(dir.toFile());
+            System.out.println("正在监视" + dir.toAbsolutePath() + "，按Ctrl+C结束");
+            // Path -> time of the last event, an export is still being written while events keep coming
+            Map<Path, Long> pending = new HashMap<Path, Long>();
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(QUIET_MILLIS / 2, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            convertAll(dir.toFile());
+                            continue;
+                        }
+                        Path file = dir.resolve((Path) event.context());
+                        if (isInput(file.toFile())) {
+                            pending.put(file, now);
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("监视目录已不可用：" + dir);
+                        return;
+                    }
+                }
+                Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Path, Long> entry = it.next();
+                    if (now - entry.getValue() >= QUIET_MILLIS) {
+                        it.remove();
+                        submit(entry.getKey().toFile());
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Shutting down
+        } finally {
+            watchService.close();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void printSummary() {
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.printf("共%d个文件（失败%d个），%d行，%d处错误，耗时%.1f秒，%.0f行/秒，%.1fMB/秒%n",
+                files.get(), failedFiles.get(), rows.get(), errors.get(), seconds, rows.get() / seconds,
+                bytes.get() / seconds / (1024 * 1024));
+    }
+
+    /**
+     * Prints the rule table and writes it as JSON to {@code 规则统计.json} in the output directory.
+     */
+    public void writeRuleReport() {
+        RuleMetrics metrics = engine.getMetrics();
+        System.out.print(metrics.getTable());
+        File report = new File(outputDir, RULE_REPORT);
+        try {
+            Files.write(report.toPath(), metrics.getJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("无法写入" + report + "：" + e);
+        }
+    }
+
+    /**
+     * Queues a conversion of {@code input}. An export already being converted is not converted a second time at once,
+     * both would write the same outputs; it is converted again once the running conversion is done.
+     */
+    private void submit(final File input) {
+        final String key = input.getAbsolutePath();
+        synchronized (inFlight) {
+            if (inFlight.containsKey(key)) {
+                inFlight.put(key, Boolean.TRUE);
+                return;
+            }
+            inFlight.put(key, Boolean.FALSE);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                do {
+                    convert(input);
+                } while (resubmitted(key));
+            }
+        });
+    }
+
+    // Clears the resubmitted flag and returns true if the export changed during its conversion, else it is done
+    private boolean resubmitted(String key) {
+        synchronized (inFlight) {
+            if (Boolean.TRUE.equals(inFlight.get(key))) {
+                inFlight.put(key, Boolean.FALSE);
+                return true;
+            }
+            inFlight.remove(key);
+            return false;
+        }
+    }
+
+    private void convert(File input) {
+        long fileStart = System.nanoTime();
+        try {
+            ConversionContext context = engine.convert(input.getPath(), outputDir.getPath(), ConversionListener.NONE);
+            String xml = "";
+            if (context.getErrors().isEmpty()) {
+                File xmlFile = new File(outputDir, context.getBaseName() + XML_SUFFIX);
+                new XmlGenerator().generate(context.getOutputFile(), xmlFile.getPath(), ConversionListener.NONE);
+                xml = "，" + xmlFile.getName();
+            }
+            files.incrementAndGet();
+            rows.addAndGet(context.getRowCount());
+            errors.addAndGet(context.getErrors().size());
+            bytes.addAndGet(input.length());
+            System.out.printf("%s：%d行（%d行沿用上次结果），%d处错误，%d毫秒 -> %s%s%n", input.getName(),
+                    context.getRowCount(), context.getReusedRowCount(), context.getErrors().size(), (System.nanoTime() - fileStart) / 1000000,
+                    new File(context.getOutputFile()).getName(), xml);
+        } catch (Exception e) {
+            files.incrementAndGet();
+            failedFiles.incrementAndGet();
+            System.err.println(input.getName() + "：转换失败，" + e);
+        }
+    }
+
+    private static boolean isInput(File file) {
+        String name = file.getName();
+        if (!file.isFile() || !name.toLowerCase().endsWith(".csv")) {
+            return false;
+        }
+        for (String suffix : OUTPUT_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String option(List<String> options, String name, String defaultValue) {
+        int index = options.indexOf(name);
+        return index >= 0 && index + 1 < options.size() ? options.get(index + 1) : defaultValue;
+    }
+}
@@ -0,0 +1,362 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Call graph and table lineage of a set of scanned procedures.
+ * <p>
+ * The graph is built once from the {@link SqlScan}s. Cycles are collapsed into strongly connected components (Tarjan,
+ * iterative so long call chains do not overflow the stack), which leaves a DAG of components. The transitive callees
+ * and callers of a component are computed on first use as a bit set over components and kept, so repeated and
+ * overlapping queries only OR a few bit sets together.
+ * <p>
+ * Tables are indexed by normalized name (unquoted parts upper-cased, quotes removed): SELECT, JOIN and TABLE_FUNC
+ * count as reads, INSERT, UPDATE, DELETE and MERGE as writes.
+ */
+public class CallGraph {
+
+    private static final Set<String> READS = new HashSet<>(Arrays.asList(
+            SqlScan.SELECT, SqlScan.JOIN, SqlScan.TABLE_FUNC));
+    private static final Set<String> WRITES = new HashSet<>(Arrays.asList(
+            SqlScan.INSERT, SqlScan.UPDATE, SqlScan.DELETE, SqlScan.MERGE));
+
+    private final String[] names;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final int[][] callees;
+
+    // Component of each procedure; component ids are in reverse topological order (callees before callers)
+    private final int[] component;
+    private final int[][] members;
+    private final int[][] componentCallees;
+    private final int[][] componentCallers;
+    private final boolean[] cyclic;
+    private final BitSet[] down;
+    private final BitSet[] up;
+
+    // normalized table -> procedure ids
+    private final Map<String, BitSet> readers = new HashMap<>();
+    private final Map<String, BitSet> writers = new HashMap<>();
+
+    public CallGraph(Map<String, SqlScan> scans) {
+        names = scans.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        callees = new int[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            SqlScan scan = scans.get(names[i]);
+            callees[i] = scan.getCalls().stream().map(ids::get).filter(id -> id != null)
+                    .mapToInt(Integer::intValue).toArray();
+            for (Map.Entry<String, Set<String>> e : scan.getTables().entrySet()) {
+                Map<String, BitSet> index = READS.contains(e.getKey()) ? readers
+                        : WRITES.contains(e.getKey()) ? writers : null;
+                if (index == null) {
+                    continue;
+                }
+                for (String table : e.getValue()) {
+                    index.computeIfAbsent(normalize(table), k -> new BitSet()).set(i);
+                }
+            }
+        }
+
+        component = new int[names.length];
+        List<int[]> components = tarjan();
+        members = components.toArray(new int[0][]);
+        int count = members.length;
+        cyclic = new boolean[count];
+        List<Set<Integer>> out = new ArrayList<>();
+        List<Set<Integer>> in = new ArrayList<>();
+        for (int c = 0; c < count; c++) {
+            out.add(new LinkedHashSet<>());
+            in.add(new LinkedHashSet<>());
+            cyclic[c] = members[c].length > 1;
+        }
+        for (int i = 0; i < names.length; i++) {
+            for (int j : callees[i]) {
+                if (component[i] == component[j]) {
+                    // covers self calls of a single procedure
+                    cyclic[component[i]] = true;
+                } else {
+                    out.get(component[i]).add(component[j]);
+                    in.get(component[j]).add(component[i]);
+                }
+            }
+        }
+        componentCallees = toArrays(out);
+        componentCallers = toArrays(in);
+        down = new BitSet[count];
+        up = new BitSet[count];
+    }
+
+    public Set<String> getProcedures() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    /**
+     * Procedures reachable from {@code proc} through one or more calls; includes {@code proc} itself only if it is on
+     * a cycle.
+     */
+    public Set<String> callees(String proc) {
+        return reach(proc, componentCallees, down);
+    }
+
+    /**
+     * Procedures that reach {@code proc} through one or more calls.
+     */
+    public Set<String> callers(String proc) {
+        return reach(proc, componentCallers, up);
+    }
+
+    /**
+     * Procedures whose direct callees form a cycle with them, one set per cycle.
+     */
+    public List<Set<String>> cycles() {
+        List<Set<String>> cycles = new ArrayList<>();
+        for (int c = 0; c < members.length; c++) {
+            if (cyclic[c]) {
+                cycles.add(names(members[c]));
+            }
+        }
+        return cycles;
+    }
+
+    public Set<String> readers(String table) {
+        return names(readers.get(normalize(table)));
+    }
+
+    public Set<String> writers(String table) {
+        return names(writers.get(normalize(table)));
+    }
+
+    /**
+     * Procedures that read {@code table} themselves or through something they call.
+     */
+    public Set<String> readersTransitive(String table) {
+        return withCallers(readers.get(normalize(table)));
+    }
+
+    /**
+     * Procedures that write {@code table} themselves or through something they call.
+     */
+    public Set<String> writersTransitive(String table) {
+        return withCallers(writers.get(normalize(table)));
+    }
+
+    /**
+     * Tables read by {@code proc} and everything it calls.
+     */
+    public Set<String> tablesRead(String proc) {
+        return tables(proc, readers);
+    }
+
+    /**
+     * Tables written by {@code proc} and everything it calls.
+     */
+    public Set<String> tablesWritten(String proc) {
+        return tables(proc, writers);
+    }
+
+    static String normalize(String table) {
+        StringBuilder sb = new StringBuilder(table.length());
+        boolean quoted = false;
+        for (int i = 0; i < table.length(); i++) {
+            char c = table.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else {
+                sb.append(quoted ? c : Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private Set<String> reach(String proc, int[][] edges, BitSet[] memo) {
+        Integer id = ids.get(proc);
+        if (id == null) {
+            return Collections.emptySet();
+        }
+        int c = component[id];
+        BitSet components = new BitSet();
+        for (int next : edges[c]) {
+            components.or(closure(next, edges, memo));
+        }
+        if (cyclic[c]) {
+            components.set(c);
+        }
+        return componentNames(components);
+    }
+
+    private Set<String> withCallers(BitSet procs) {
+        if (procs == null) {
+            return Collections.emptySet();
+        }
+        BitSet components = new BitSet();
+        for (int i = procs.nextSetBit(0); i >= 0; i = procs.nextSetBit(i + 1)) {
+            components.or(closure(component[i], componentCallers, up));
+        }
+        return componentNames(components);
+    }
+
+    private Set<String> tables(String proc, Map<String, BitSet> index) {
+        Integer id = ids.get(proc);
+        if (id == null) {
+            return Collections.emptySet();
+        }
+        BitSet procs = new BitSet();
+        BitSet components = closure(component[id], componentCallees, down);
+        for (int c = components.nextSetBit(0); c >= 0; c = components.nextSetBit(c + 1)) {
+            for (int i : members[c]) {
+                procs.set(i);
+            }
+        }
+        Set<String> tables = new TreeSet<>();
+        for (Map.Entry<String, BitSet> e : index.entrySet()) {
+            if (e.getValue().intersects(procs)) {
+                tables.add(e.getKey());
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Components reachable from {@code c} along {@code edges}, including {@code c}; memoized in {@code memo}.
+     */
+    private synchronized BitSet closure(int c, int[][] edges, BitSet[] memo) {
+        if (memo[c] != null) {
+            return memo[c];
+        }
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(c);
+        while (!stack.isEmpty()) {
+            int x = stack.peek();
+            if (memo[x] != null) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (int next : edges[x]) {
+                if (memo[next] == null) {
+                    stack.push(next);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                BitSet reach = new BitSet();
+                reach.set(x);
+                for (int next : edges[x]) {
+                    reach.or(memo[next]);
+                }
+                memo[x] = reach;
+                stack.pop();
+            }
+        }
+        return memo[c];
+    }
+
+    // Iterative Tarjan; fills component[] and returns the members of each component in completion order
+    private List<int[]> tarjan() {
+        int n = names.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] edge = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int[] stack = new int[n];
+        int top = 0;
+        int[] callStack = new int[n];
+        int next = 0;
+        List<int[]> components = new ArrayList<>();
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth] = root;
+            index[root] = low[root] = next++;
+            stack[top++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int v = callStack[depth];
+                if (edge[v] < callees[v].length) {
+                    int w = callees[v][edge[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = next++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        callStack[++depth] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    int start = top;
+                    do {
+                        start--;
+                    } while (stack[start] != v);
+                    int[] scc = Arrays.copyOfRange(stack, start, top);
+                    for (int w : scc) {
+                        onStack[w] = false;
+                        component[w] = components.size();
+                    }
+                    components.add(scc);
+                    top = start;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callStack[depth];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return components;
+    }
+
+    private Set<String> componentNames(BitSet components) {
+        Set<String> result = new TreeSet<>();
+        for (int c = components.nextSetBit(0); c >= 0; c = components.nextSetBit(c + 1)) {
+            for (int i : members[c]) {
+                result.add(names[i]);
+            }
+        }
+        return result;
+    }
+
+    private Set<String> names(BitSet procs) {
+        Set<String> result = new TreeSet<>();
+        if (procs != null) {
+            for (int i = procs.nextSetBit(0); i >= 0; i = procs.nextSetBit(i + 1)) {
+                result.add(names[i]);
+            }
+        }
+        return result;
+    }
+
+    private Set<String> names(int[] procs) {
+        Set<String> result = new TreeSet<>();
+        for (int i : procs) {
+            result.add(names[i]);
+        }
+        return result;
+    }
+
+    private static int[][] toArrays(List<Set<Integer>> sets) {
+        int[][] arrays = new int[sets.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = sets.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
+}
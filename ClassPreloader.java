@@ -0,0 +1,83 @@
+package shujiaw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import com.opencsv.CSVReader;
+
+/**
+ * Loads and warms up POI and opencsv on a background thread, so the first conversion does not pay for it.
+ * <p>
+ * Loading the classes alone is not enough for POI: the first {@code new XSSFWorkbook(InputStream)} also initializes
+ * the OOXML package and XMLBeans type system. The warm-up therefore writes a one-cell .xlsx and .xls to memory and
+ * reads them back through the same calls {@link ConversionEngine#readExcel} uses, and parses a short CSV line.
+ * Failures are ignored; the conversion then just loads the classes itself.
+ */
+public class ClassPreloader {
+
+    private static volatile Thread thread;
+
+    private ClassPreloader() {
+    }
+
+    /**
+     * Starts the warm-up once per JVM on a low-priority daemon thread and returns immediately.
+     */
+    public static synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(ClassPreloader::warmUp, "preload");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    public static void warmUp() {
+        long start = System.nanoTime();
+        try {
+            readBack(new XSSFWorkbook(), true);
+            readBack(new HSSFWorkbook(), false);
+            CSVReader reader = new CSVReader(new StringReader("SQH,A01\n\"1\",\"2\"\n"));
+            try {
+                while (reader.readNext() != null) {
+                    // only loads the parser
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Throwable e) {
+            return;
+        }
+        if (Boolean.getBoolean("startup.trace")) {
+            System.out.printf("preload-ms=%d%n", (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    private static void readBack(Workbook wb, boolean xssf) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            Row row = wb.createSheet("preload").createRow(0);
+            row.createCell(0).setCellValue("SQH");
+            row.createCell(1).setCellValue(1);
+            wb.write(bytes);
+        } finally {
+            wb.close();
+        }
+        Workbook read = xssf ? new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))
+                : new HSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            ConversionEngine.getCellFormatValue(read.getSheetAt(0).getRow(0).getCell(0));
+            ConversionEngine.getCellFormatValue(read.getSheetAt(0).getRow(0).getCell(1));
+        } finally {
+            read.close();
+        }
+    }
+}
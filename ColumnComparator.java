@@ -0,0 +1,560 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Decides whether a shared column's DB2 text and Excel text are the same value.
+ * <p>
+ * One comparator is chosen per column before the rows are compared, from the JDBC column type, the Java type of the
+ * DB2 values or {@link ReconcilerService#setColumnComparators configuration}. They work on the strings in place, with
+ * no trimmed copies and no {@link BigDecimal} or date objects per cell; only an exact number of more than 15 digits
+ * is parsed as a {@link BigDecimal}. Two values that are equal as trimmed text are
+ * equal for every comparator, which keeps the row digest shortcut in {@link ReconcilerService} valid. A value that
+ * does not parse as the column type, e.g. an empty cell, is compared as trimmed text.
+ */
+public abstract class ColumnComparator {
+
+    /** Trimmed text, case-sensitive; the comparison used before there were comparators. */
+    public static final ColumnComparator TEXT = new ColumnComparator("text") {
+        @Override
+        public boolean equal(String db, String excel) {
+            return trimmedEquals(db, excel, false);
+        }
+    };
+
+    /** Trimmed text ignoring case, for codes and flags (DB2 CHAR columns). */
+    public static final ColumnComparator CODE = new ColumnComparator("code") {
+        @Override
+        public boolean equal(String db, String excel) {
+            return trimmedEquals(db, excel, true);
+        }
+    };
+
+    /**
+     * Numbers compared at 15 significant digits, the precision Excel keeps: {@code 1.50 = 1.5 = 1.5E0}. For floating
+     * point columns.
+     */
+    public static final ColumnComparator NUMERIC = new Numeric(-1, false);
+
+    /**
+     * Numbers compared exactly: {@code 1.50 = 1.5}, but {@code 6222021234567890123 != 6222021234567890124} and
+     * {@code 1234567890123456 != 1234567890123457}. For integer and DECIMAL columns; an Excel value written by
+     * {@link Double#toString} only holds a double and is compared as {@link #NUMERIC}.
+     */
+    public static final ColumnComparator DECIMAL = new Numeric(-1, true);
+
+    /** Calendar day, whatever the time part: {@code 2017-01-05 = 2017/1/5 = 20170105 = 42740} (Excel serial). */
+    public static final ColumnComparator DATE = new ColumnComparator("date") {
+        @Override
+        public boolean equal(String db, String excel) {
+            long a = dateTime(db);
+            long b = dateTime(excel);
+            if (a == INVALID || b == INVALID) {
+                return trimmedEquals(db, excel, false);
+            }
+            return Math.floorDiv(a, NANOS_PER_DAY) == Math.floorDiv(b, NANOS_PER_DAY);
+        }
+    };
+
+    /**
+     * Date and time to the nanosecond; DB2 ({@code 2017-01-05-10.20.30.000000}), JDBC ({@code 2017-01-05 10:20:30.0})
+     * and Excel ({@code 2017/1/5 10:20:30}, serial {@code 42740.43090}, rounded to the millisecond) forms.
+     */
+    public static final ColumnComparator TIMESTAMP = new ColumnComparator("timestamp") {
+        @Override
+        public boolean equal(String db, String excel) {
+            long a = dateTime(db);
+            long b = dateTime(excel);
+            if (a == INVALID || b == INVALID) {
+                return trimmedEquals(db, excel, false);
+            }
+            return a == b;
+        }
+    };
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final long NANOS_PER_DAY = 86_400_000_000_000L;
+    // Excel serial day 25569 is 1970-01-01
+    private static final int EXCEL_EPOCH = 25569;
+    private static final int SIGNIFICANT_DIGITS = 15;
+    private static final long MANTISSA_MASK = (1L << 50) - 1;
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final String name;
+
+    protected ColumnComparator(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param db    DB2 value as text, "" for NULL
+     * @param excel Excel cell text, "" for an empty cell
+     */
+    public abstract boolean equal(String db, String excel);
+
+    /**
+     * Numbers rounded half-up to {@code scale} decimals before comparing, so a DECIMAL(10,2) of {@code 1.23} equals
+     * an Excel {@code 1.2300000000000002}.
+     */
+    public static ColumnComparator numeric(int scale) {
+        return scale < 0 ? NUMERIC : new Numeric(scale, false);
+    }
+
+    /**
+     * Exact numbers rounded half-up to {@code scale} decimals before comparing, as {@link #DECIMAL}.
+     */
+    public static ColumnComparator decimal(int scale) {
+        return scale < 0 ? DECIMAL : new Numeric(scale, true);
+    }
+
+    /**
+     * Comparator for a column of JDBC type {@code type} (see {@link Types}) and scale. CHAR columns are taken as codes,
+     * VARCHAR and everything else as text.
+     */
+    public static ColumnComparator forJdbcType(int type, int scale) {
+        switch (type) {
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return scale > 0 ? decimal(scale) : DECIMAL;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return NUMERIC;
+            case Types.DATE:
+                return DATE;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return TIMESTAMP;
+            case Types.CHAR:
+            case Types.NCHAR:
+                return CODE;
+            default:
+                return TEXT;
+        }
+    }
+
+    /**
+     * Comparator for a column holding DB2 values like {@code value}, for rows that come without JDBC metadata.
+     */
+    public static ColumnComparator forValue(Object value) {
+        if (value instanceof BigDecimal) {
+            int scale = ((BigDecimal) value).scale();
+            return scale > 0 ? decimal(scale) : DECIMAL;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return NUMERIC;
+        }
+        if (value instanceof Number) {
+            return DECIMAL;
+        }
+        if (value instanceof java.sql.Timestamp || value instanceof LocalDateTime) {
+            return TIMESTAMP;
+        }
+        if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            return DATE;
+        }
+        return TEXT;
+    }
+
+    /**
+     * Parses a configured type: {@code text}, {@code code}, {@code date}, {@code timestamp}, {@code numeric},
+     * {@code numeric(scale)}, {@code decimal} or {@code decimal(scale)}.
+     */
+    public static ColumnComparator parse(String type) {
+        String t = type.trim().toLowerCase(Locale.ROOT);
+        if (t.startsWith("numeric(") && t.endsWith(")")) {
+            return numeric(Integer.parseInt(t.substring("numeric(".length(), t.length() - 1).trim()));
+        }
+        if (t.startsWith("decimal(") && t.endsWith(")")) {
+            return decimal(Integer.parseInt(t.substring("decimal(".length(), t.length() - 1).trim()));
+        }
+        switch (t) {
+            case "text":
+                return TEXT;
+            case "code":
+                return CODE;
+            case "numeric":
+                return NUMERIC;
+            case "decimal":
+                return DECIMAL;
+            case "date":
+                return DATE;
+            case "timestamp":
+                return TIMESTAMP;
+            default:
+                throw new IllegalArgumentException("Unknown column type " + type);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static boolean trimmedEquals(String a, String b, boolean ignoreCase) {
+        int aStart = trimStart(a);
+        int aEnd = trimEnd(a, aStart);
+        int bStart = trimStart(b);
+        int bEnd = trimEnd(b, bStart);
+        int length = aEnd - aStart;
+        return length == bEnd - bStart && a.regionMatches(ignoreCase, aStart, b, bStart, length);
+    }
+
+    // Same whitespace as String.trim()
+    private static int trimStart(String s) {
+        int start = 0;
+        while (start < s.length() && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(String s, int start) {
+        int end = s.length();
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Parses a decimal number, rounded half-up to {@link #SIGNIFICANT_DIGITS} and without trailing zeros, into one
+     * long: sign in bit 63, exponent in bits 50-62, mantissa below. Equal numbers give equal longs.
+     *
+     * @return the packed number, or {@link #INVALID}
+     */
+    static long number(String s) {
+        int i = trimStart(s);
+        int end = trimEnd(s, i);
+        if (i == end) {
+            return INVALID;
+        }
+        boolean negative = false;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean dot = false;
+        // Integer digits since the start or the last thousands separator
+        int group = 0;
+        boolean grouped = false;
+        for (; i < end; i++) {
+            c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (!dot) {
+                    group++;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (dot) {
+                        exponent--;
+                    }
+                } else if (!dot) {
+                    exponent++;
+                }
+            } else if (c == '.' && !dot) {
+                if (grouped && group != 3) {
+                    return INVALID;
+                }
+                dot = true;
+            } else if (c == ',' && !dot && any) {
+                // Thousands separator: 1 to 3 digits before the first one, exactly 3 after each
+                if (grouped ? group != 3 : group > 3) {
+                    return INVALID;
+                }
+                grouped = true;
+                group = 0;
+            } else if ((c == 'e' || c == 'E') && any) {
+                if (!dot && grouped && group != 3) {
+                    return INVALID;
+                }
+                int e = 0;
+                boolean negativeExponent = false;
+                i++;
+                if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                    negativeExponent = s.charAt(i) == '-';
+                    i++;
+                }
+                if (i == end) {
+                    return INVALID;
+                }
+                for (; i < end; i++) {
+                    c = s.charAt(i);
+                    if (c < '0' || c > '9' || e > 9999) {
+                        return INVALID;
+                    }
+                    e = e * 10 + (c - '0');
+                }
+                exponent += negativeExponent ? -e : e;
+            } else {
+                return INVALID;
+            }
+        }
+        if (!any || !dot && grouped && group != 3) {
+            return INVALID;
+        }
+        if (digits > SIGNIFICANT_DIGITS) {
+            long pow = POW10[digits - SIGNIFICANT_DIGITS];
+            long rest = mantissa % pow;
+            mantissa /= pow;
+            if (rest * 2 >= pow) {
+                mantissa++;
+            }
+            exponent += digits - SIGNIFICANT_DIGITS;
+        }
+        if (mantissa == 0) {
+            return 0;
+        }
+        while (mantissa % 10 == 0) {
+            mantissa /= 10;
+            exponent++;
+        }
+        if (exponent < -4096 || exponent > 4095) {
+            return INVALID;
+        }
+        return (negative ? Long.MIN_VALUE : 0) | ((long) (exponent & 0x1FFF) << 50) | mantissa;
+    }
+
+    /**
+     * A packed {@link #number} rounded half-up to {@code scale} decimals, in units of 10^-scale.
+     *
+     * @return the units, or {@link #INVALID} if they do not fit in a long
+     */
+    static long units(long number, int scale) {
+        long mantissa = number & MANTISSA_MASK;
+        int shift = (int) ((number << 1) >> 51) + scale;
+        long units;
+        if (shift >= 0) {
+            if (shift >= POW10.length || mantissa > Long.MAX_VALUE / POW10[shift]) {
+                return INVALID;
+            }
+            units = mantissa * POW10[shift];
+        } else if (-shift >= POW10.length) {
+            units = 0;
+        } else {
+            long pow = POW10[-shift];
+            units = mantissa / pow;
+            if (mantissa % pow * 2 >= pow) {
+                units++;
+            }
+        }
+        return number < 0 ? -units : units;
+    }
+
+    /**
+     * Parses a local date-time as nanoseconds since 1970-01-01T00:00. Accepts digit groups year, month, day, hour,
+     * minute, second and fraction separated by any of {@code -/.: T}, {@code yyyyMMdd}, and Excel serial days with an
+     * optional day fraction.
+     *
+     * @return the nanoseconds, or {@link #INVALID}
+     */
+    static long dateTime(String s) {
+        int i = trimStart(s);
+        int end = trimEnd(s, i);
+        long year = 0;
+        long month = 0;
+        long day = 0;
+        long hour = 0;
+        long minute = 0;
+        long second = 0;
+        long nanos = 0;
+        int group = 0;
+        while (i < end) {
+            int groupStart = i;
+            long value = 0;
+            while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                if (i - groupStart < 18) {
+                    value = value * 10 + (s.charAt(i) - '0');
+                }
+                i++;
+            }
+            int length = i - groupStart;
+            if (length == 0) {
+                return INVALID;
+            }
+            switch (group) {
+                case 0:
+                    if (length == 5) {
+                        return excelSerial(s, value, i, end);
+                    }
+                    if (length == 8) {
+                        year = value / 10000;
+                        month = value / 100 % 100;
+                        day = value % 100;
+                        group = 2;
+                    } else {
+                        year = value;
+                    }
+                    break;
+                case 1:
+                    month = value;
+                    break;
+                case 2:
+                    day = value;
+                    break;
+                case 3:
+                    hour = value;
+                    break;
+                case 4:
+                    minute = value;
+                    break;
+                case 5:
+                    second = value;
+                    break;
+                case 6:
+                    nanos = length <= 9 ? value * POW10[9 - length] : value / POW10[Math.min(length, 18) - 9];
+                    break;
+                default:
+                    return INVALID;
+            }
+            group++;
+            if (i == end) {
+                break;
+            }
+            char separator = s.charAt(i++);
+            if ("-/.: T".indexOf(separator) < 0) {
+                return INVALID;
+            }
+            while (i < end && s.charAt(i) == ' ') {
+                i++;
+            }
+        }
+        if (group < 3 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 24 || minute > 59
+                || second > 60) {
+            return INVALID;
+        }
+        return epochDay(year, month, day) * NANOS_PER_DAY
+                + ((hour * 60 + minute) * 60 + second) * 1_000_000_000L + nanos;
+    }
+
+    // Serial day number of the 1900 date system, the digits after '.' are the time of day
+    private static long excelSerial(String s, long serial, int i, int end) {
+        long nanos = 0;
+        if (i < end) {
+            if (s.charAt(i) != '.') {
+                return INVALID;
+            }
+            long fraction = 0;
+            long scale = 1;
+            for (i++; i < end; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return INVALID;
+                }
+                if (scale < POW10[15]) {
+                    fraction = fraction * 10 + (c - '0');
+                    scale *= 10;
+                }
+            }
+            nanos = Math.round((double) fraction / scale * 86_400_000) * 1_000_000L;
+        }
+        return (serial - EXCEL_EPOCH) * NANOS_PER_DAY + nanos;
+    }
+
+    private static long daysInMonth(long year, long month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // Days since 1970-01-01 of a proleptic Gregorian date
+    private static long epochDay(long year, long month, long day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // More digits than number() keeps, so two different numbers may pack alike
+    private static boolean beyondSignificant(String s) {
+        int digits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == 'e' || c == 'E') {
+                break;
+            }
+            if (c >= '0' && c <= '9' && ++digits > SIGNIFICANT_DIGITS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // An Excel numeric cell read as String.valueOf(double), e.g. 1.2300000000000002 or 6.2220212345678899E18
+    private static boolean isDoubleText(String s) {
+        String t = s.trim();
+        try {
+            return Double.toString(Double.parseDouble(t)).equals(t);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static final class Numeric extends ColumnComparator {
+        // Decimals to round to, -1 for significant digits only
+        private final int scale;
+        // Compare every digit, not only the first SIGNIFICANT_DIGITS
+        private final boolean exact;
+
+        Numeric(int scale, boolean exact) {
+            super((exact ? "decimal" : "numeric") + (scale < 0 ? "" : "(" + scale + ")"));
+            this.scale = scale;
+            this.exact = exact;
+        }
+
+        @Override
+        public boolean equal(String db, String excel) {
+            long a = number(db);
+            long b = number(excel);
+            if (a == INVALID || b == INVALID) {
+                return trimmedEquals(db, excel, false);
+            }
+            if (exact && (beyondSignificant(db) || beyondSignificant(excel)) && !isDoubleText(excel)) {
+                return exactEquals(db, excel);
+            }
+            if (a == b || scale < 0) {
+                return a == b;
+            }
+            long unitsA = units(a, scale);
+            return unitsA != INVALID && unitsA == units(b, scale);
+        }
+
+        // Both already parsed by number(), so only the thousands separators are in the way
+        private boolean exactEquals(String db, String excel) {
+            BigDecimal x = new BigDecimal(db.trim().replace(",", ""));
+            BigDecimal y = new BigDecimal(excel.trim().replace(",", ""));
+            if (scale >= 0) {
+                x = x.setScale(scale, RoundingMode.HALF_UP);
+                y = y.setScale(scale, RoundingMode.HALF_UP);
+            }
+            return x.compareTo(y) == 0;
+        }
+    }
+}
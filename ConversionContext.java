@@ -0,0 +1,119 @@
+package shujiaw;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of one conversion run: the converted rows, the errors found and the files written.
+ * Created by {@link ConversionEngine#convert} and confined to the thread running it.
+ */
+public class ConversionContext {
+
+    // Report progress every this many rows
+    static final int PROGRESS_INTERVAL = 100;
+    // The file to fix written by an earlier run; converting it again is a fix-up round of the original export
+    static final String REVISION_SUFFIX = "需修改后使用";
+
+    private final String inputPath;
+    private final String outputDir;
+    private final String baseName;
+    private final boolean revision;
+    private final ConversionListener listener;
+    private final List<String[]> rows = new ArrayList<String[]>();
+    private final ValidationErrors errors = new ValidationErrors();
+    private int reusedRows;
+    private boolean cancelled;
+    private String outputFile;
+    private String errorReportFile;
+
+    ConversionContext(String inputPath, String outputDir, ConversionListener listener) {
+        this.inputPath = inputPath;
+        this.outputDir = outputDir;
+        String name = new File(inputPath).getName();
+        String baseName = name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name;
+        this.revision = baseName.endsWith(REVISION_SUFFIX) && baseName.length() > REVISION_SUFFIX.length();
+        // A fix-up round is named after the original export, so it finds that export's state and replaces its outputs
+        this.baseName = revision ? baseName.substring(0, baseName.length() - REVISION_SUFFIX.length()) : baseName;
+        this.listener = listener;
+    }
+
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    public String getBaseName() {
+        return baseName;
+    }
+
+    /**
+     * @return true if the input is a {@code <name>需修改后使用.csv} written by an earlier run, its rows are already converted
+     */
+    public boolean isRevision() {
+        return revision;
+    }
+
+    ConversionListener getListener() {
+        return listener;
+    }
+
+    List<String[]> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return data rows converted, title and header lines excluded
+     */
+    public int getRowCount() {
+        return Math.max(rows.size() - 2, 0);
+    }
+
+    /**
+     * @return data rows taken unchanged from the previous run instead of being validated again
+     */
+    public int getReusedRowCount() {
+        return reusedRows;
+    }
+
+    void rowReused() {
+        reusedRows++;
+    }
+
+    public ValidationErrors getErrors() {
+        return errors;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setCancelled() {
+        this.cancelled = true;
+    }
+
+    /**
+     * @return the converted CSV, or null if the run was cancelled
+     */
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    void setOutputFile(String outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * @return the error report, or null if there was no error
+     */
+    public String getErrorReportFile() {
+        return errorReportFile;
+    }
+
+    void setErrorReportFile(String errorReportFile) {
+        this.errorReportFile = errorReportFile;
+    }
+}
@@ -0,0 +1,557 @@
+package shujiaw;
+
+import com.opencsv.CSVReader;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 问卷星文件转换引擎。
+ * <p>
+ * Holds everything that does not change between conversions: the column rules from {@code conf.properties}, the
+ * applicant index and the assessor table. An engine is immutable once built, apart from its thread-safe
+ * {@link RuleMetrics}, and can be shared by any number of concurrent conversions; all per-file state lives in the {@link ConversionContext} returned by {@link #convert}.
+ */
+public class ConversionEngine {
+
+    // Survey export columns before the SQH column, dropped from the output
+    private static final int PREFIX_COUNT = 12;
+    // Survey export columns read for the applicant lookup
+    private static final int ID_COLUMN = 7;
+    private static final int NAME_COLUMN = 13;
+    private static final int DISTRICT_COLUMN = 29;
+    // Assessor number columns, the assessor name is in the next column
+    private static final int[] ASSESSOR_COLUMNS = {323, 326};
+    private static final Charset OUTPUT_CHARSET = Charset.forName("gbk");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+
+    private final String[] headers;
+    private final Map<String, Integer> headerIndex;
+    private final Map<String, String[]> validateMap;
+    private final ApplicantIndex applicantIndex;
+    private final Map<String, String> assessmentsMap;
+
+    // Header positions of the custom conversions, resolved once
+    private final boolean[] jbColumns;
+    private final boolean[] zeroWhenEmptyColumns;
+    private final int a16bColumn;
+    // Thread-safe counters, the only part of the engine that changes after construction
+    private final RuleMetrics metrics;
+    // Hash of rules and reference data, results of an earlier run are only reused under the same fingerprint
+    private final long fingerprint;
+
+    public ConversionEngine(Properties rules, ApplicantIndex applicantIndex, Map<String, String> assessmentsMap) {
+        String headerStr = rules.getProperty("Header");
+        if (headerStr == null) {
+            throw new RuntimeException("配置文件有问题：缺少Header");
+        }
+        this.headers = headerStr.split(",");
+        Map<String, Integer> headerIndex = new HashMap<String, Integer>();
+        Map<String, String[]> validateMap = new HashMap<String, String[]>();
+        for (int i = 0; i < headers.length; i++) {
+            String column = headers[i];
+            if (!headerIndex.containsKey(column)) {
+                headerIndex.put(column, i);
+            }
+            String columnValidaterStr = rules.getProperty(column);
+            if (columnValidaterStr != null) {
+                validateMap.put(column, columnValidaterStr.split(";"));
+            }
+        }
+        this.headerIndex = Collections.unmodifiableMap(headerIndex);
+        this.validateMap = Collections.unmodifiableMap(validateMap);
+        this.applicantIndex = applicantIndex;
+        this.assessmentsMap = Collections.unmodifiableMap(new HashMap<String, String>(assessmentsMap));
+
+        //List all JBXX cells
+        jbColumns = new boolean[headers.length];
+        for (int j = 1; j <= 10; j++) {
+            jbColumns[getHeaderIndex("JB" + String.format("%02d", j))] = true;
+        }
+        //A28A, A28B, A29A, A29B, A29C empty to 0
+        zeroWhenEmptyColumns = new boolean[headers.length];
+        for (String header : new String[]{"A28A", "A28B", "A29A", "A29B", "A29C"}) {
+            zeroWhenEmptyColumns[getHeaderIndex(header)] = true;
+        }
+        a16bColumn = getHeaderIndex("A16B");
+        fingerprint = fingerprint(rules, applicantIndex, this.assessmentsMap);
+        metrics = new RuleMetrics(headers);
+    }
+
+    private static long fingerprint(Properties rules, ApplicantIndex applicantIndex, Map<String, String> assessmentsMap) {
+        long hash = applicantIndex.fingerprint();
+        for (String name : new TreeSet<String>(rules.stringPropertyNames())) {
+            hash = ValidationState.combine(hash, ValidationState.hash(new String[]{name, rules.getProperty(name)}));
+        }
+        for (Map.Entry<String, String> entry : new TreeMap<String, String>(assessmentsMap).entrySet()) {
+            hash = ValidationState.combine(hash, ValidationState.hash(new String[]{entry.getKey(), entry.getValue()}));
+        }
+        return hash;
+    }
+
+    /**
+     * Loads the rules, the applicant workbook (总表) and the assessor workbook (评估人员表).
+     */
+    public static ConversionEngine load(String confPath, String applicationPath, String assessmentPath) throws IOException {
+        return new ConversionEngine(loadRules(confPath), loadApplicants(applicationPath), loadAssessments(assessmentPath));
+    }
+
+    public static Properties loadRules(String confPath) throws IOException {
+        Properties properties = new Properties();
+        InputStream inputStream = new FileInputStream(confPath);
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return properties;
+    }
+
+    public static ApplicantIndex loadApplicants(String applicationPath) throws IOException {
+        ApplicantIndex applicantIndex = new ApplicantIndex();
+        Workbook wb = readExcel(applicationPath);
+        if (wb != null) {
+            Sheet sheet = wb.getSheetAt(0);
+            int rownum = sheet.getPhysicalNumberOfRows();
+            // Ignore the title
+            for (int i = 1; i < rownum; i++) {
+                Row row = sheet.getRow(i);
+                if (row != null) {
+                    String[] args = new String[6];
+                    args[ApplicantIndex.SQH] = getCellFormatValue(row.getCell(0));
+                    args[ApplicantIndex.NAME] = getCellFormatValue(row.getCell(1));
+                    args[ApplicantIndex.GENDER] = getCellFormatValue(row.getCell(2)).equals("男") ? "1" : "2";
+                    args[ApplicantIndex.AGE] = getCellFormatValue(row.getCell(5));
+                    args[ApplicantIndex.DISTRICT] = getCellFormatValue(row.getCell(6));
+                    args[ApplicantIndex.ID] = getCellFormatValue(row.getCell(3));
+                    applicantIndex.add(args);
+                }
+            }
+        }
+        return applicantIndex;
+    }
+
+    public static Map<String, String> loadAssessments(String assessmentPath) throws IOException {
+        Map<String, String> assessmentsMap = new HashMap<String, String>();
+        Workbook wb = readExcel(assessmentPath);
+        if (wb != null) {
+            // 获取第一个sheet
+            Sheet sheet = wb.getSheetAt(0);
+            // 获取最大行数
+            int rownum = sheet.getPhysicalNumberOfRows();
+            // Ignore the title
+            for (int i = 1; i < rownum; i++) {
+                Row row = sheet.getRow(i);
+                if (row != null) {
+                    String id = getCellFormatValue(row.getCell(3));
+                    String name = getCellFormatValue(row.getCell(4));
+                    assessmentsMap.put(id, name);
+                }
+            }
+        }
+        return assessmentsMap;
+    }
+
+    /**
+     * Converts one survey export. Output files are named after the input file and written to {@code outputDir}:
+     * {@code <name>修订后的文件.csv} when there is no error, otherwise {@code <name>需修改后使用.csv} plus
+     * {@code <name>错误报告.csv}.
+     */
+    public ConversionContext convert(String wenJuanXinPath, String outputDir, ConversionListener listener) throws IOException {
+        ConversionContext context = new ConversionContext(wenJuanXinPath, outputDir, listener);
+        File stateFile = new File(outputDir, "." + context.getBaseName() + ".state");
+        ValidationState previous = ValidationState.read(stateFile, fingerprint);
+        ValidationState current = new ValidationState(fingerprint);
+        if (convertToList(context, previous, current)) {
+            writeIntoCsv(context);
+            try {
+                current.write(stateFile);
+            } catch (IOException e) {
+                // Only costs a full validation next time
+                stateFile.delete();
+            }
+        }
+        return context;
+    }
+
+    public String[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * @return counters of the conf.properties rules over all conversions of this engine
+     */
+    public RuleMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Rows whose raw content is found in {@code previous} take the earlier output and errors, the others are
+     * validated. Every row ends up in {@code current} for the next run, keyed by its raw and by its converted cells,
+     * so that the unchanged rows of a fix-up round ({@link ConversionContext#isRevision()}) are found as well.
+     */
+    private boolean convertToList(ConversionContext context, ValidationState previous, ValidationState current) throws IOException {
+        File file = new File(context.getInputPath());
+        long totalBytes = file.length();
+        CountingInputStream in = new CountingInputStream(new FileInputStream(file));
+        CSVReader reader = new CSVReader(new InputStreamReader(in, "gbk"));
+        ConversionListener listener = context.getListener();
+        List<String[]> list = context.getRows();
+        ValidationErrors errors = context.getErrors();
+        try {
+            Iterator<String[]> it = reader.iterator();
+            boolean revision = context.isRevision();
+            boolean titleFlag = true;
+            // A file to fix already has the header line, it is added again below
+            boolean headerFlag = revision;
+            // Line number in the output file, the header line is inserted after the title
+            int row = 2;
+            while (it.hasNext()) {
+                if (listener.isCancelled()) {
+                    context.setCancelled();
+                    return false;
+                }
+                String[] nextLine = it.next();
+                String[] convertedLine;
+                if (titleFlag) {
+                    convertedLine = revision ? nextLine : truncateColumns(nextLine);
+                    titleFlag = false;
+                } else if (headerFlag) {
+                    headerFlag = false;
+                    continue;
+                } else {
+                    row++;
+                    long hash = ValidationState.hash(nextLine);
+                    ValidationState.Entry entry = previous.get(hash);
+                    if (entry != null) {
+                        convertedLine = entry.cells;
+                        for (ValidationError error : entry.errors) {
+                            addError(context, new ValidationError(row, error.getColumn(), error.getHeader(),
+                                    error.getRule(), error.getMessage(), error.getValue()));
+                        }
+                        context.rowReused();
+                    } else {
+                        int errorCount = errors.size();
+                        convertedLine = truncateColumns(validate(revision ? untruncate(nextLine) : nextLine, row,
+                                revision, context));
+                        entry = new ValidationState.Entry(convertedLine,
+                                new ArrayList<ValidationError>(errors.getErrors().subList(errorCount, errors.size())));
+                    }
+                    current.put(hash, entry);
+                    current.put(ValidationState.hash(convertedLine), entry);
+                }
+                list.add(convertedLine);
+                if (row == 3) {
+                    listener.onFirstRow();
+                }
+                if (row % ConversionContext.PROGRESS_INTERVAL == 0) {
+                    listener.onProgress(row - 2, in.getCount(), totalBytes);
+                }
+            }
+            listener.onProgress(row - 2, totalBytes, totalBytes);
+        } finally {
+            reader.close();
+        }
+        // Add header
+        list.add(1, headers);
+        return true;
+    }
+
+    private String[] truncateColumns(String[] values) {
+        String[] strs = new String[values.length - PREFIX_COUNT];
+        for (int i = 0; i < strs.length; i++) {
+            strs[i] = values[i + PREFIX_COUNT];
+        }
+        return strs;
+    }
+
+    // Puts the dropped columns back in front of a converted row, empty: only the ID number was read from them
+    private static String[] untruncate(String[] cells) {
+        String[] values = new String[cells.length + PREFIX_COUNT];
+        System.arraycopy(cells, 0, values, PREFIX_COUNT, cells.length);
+        return values;
+    }
+
+    /**
+     * @param revision the row comes from a file to fix; an SQH filled in there is taken as it is
+     */
+    private String[] validate(String[] values, int row, boolean revision, ConversionContext context) {
+        ValidationErrors errors = context.getErrors();
+
+        // Fetch SQH number and validate user base info
+        int applicantErrorCount = errors.size();
+        String[] applicatnsArgs = revision && !StringUtils.isBlank(values[PREFIX_COUNT]) ? null
+                : resolveApplicant(values, row, context);
+        // An unresolved applicant is already reported on the SQH cell, which then gets no other error
+        boolean applicantError = errors.size() > applicantErrorCount;
+
+        for (int i = PREFIX_COUNT; i < values.length; i++) {
+            int column = i - PREFIX_COUNT;
+            // Clean invalid word to empty
+            values[i] = cleanValue(values[i]);
+            int errorCount = i == PREFIX_COUNT ? applicantErrorCount : errors.size();
+
+            // Custom validate: start
+            if (i == PREFIX_COUNT) {
+                if (applicatnsArgs != null) {
+                    values[i] = applicatnsArgs[ApplicantIndex.SQH];
+                }
+                if (StringUtils.isEmpty(values[i]) && !applicantError) {
+                    addError(context, row, i, "SQH", "总表找不到申请号！", values);
+                }
+            }
+
+            // Validate assessments
+            for (int assessorColumn : ASSESSOR_COLUMNS) {
+                if (i == assessorColumn && i + 1 < values.length) {
+                    String assessment = assessmentsMap.get(values[i]);
+                    values[i + 1] = cleanValue(values[i + 1]);
+                    if (assessment == null || !assessment.equals(values[i + 1])) {
+                        addError(context, row, i, "Assessment", "调查员编号和评估人员信息不匹配[评估人员信息表："
+                                + (assessment == null ? "未找到" : assessment) + "]", values);
+                    }
+                }
+            }
+
+            if (column < headers.length) {
+                //Convert A16B
+                if (column == a16bColumn && !StringUtils.isEmpty(values[i]) && "2".equals(values[i - 1])) {
+                    values[i] = "崇明话";
+                }
+                //Convert JBXX 0 to empty
+                if (jbColumns[column] && "0".equals(values[i])) {
+                    values[i] = "";
+                }
+                //Convert A28A, A28B, A29A, A29B, A29C empty to 0
+                if (zeroWhenEmptyColumns[column] && StringUtils.isEmpty(values[i])) {
+                    values[i] = "0";
+                }
+            }
+
+            // Custom validate: End
+
+            // If it has been validated above, then no need check again.
+            if (errors.size() > errorCount) {
+                continue;
+            }
+            // Validate by configuration
+            String[] validaters = column < headers.length ? validateMap.get(headers[column]) : null;
+            if (validaters != null) {
+                for (String validater : validaters) {
+                    long start = metrics.start();
+                    boolean valid = validateRule(validater, values, i, row, context);
+                    metrics.record(validater, column, !valid, start);
+                    // Report the first failing rule of the cell only
+                    if (!valid) {
+                        break;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private boolean validateRule(String validater, String[] values, int i, int row, ConversionContext context) {
+        if ("Required".equals(validater) && StringUtils.isEmpty(values[i])) {
+            addError(context, row, i, validater, "必填字段不能为空！", values);
+            return false;
+        }
+        if ("Number".equals(validater) && !isNumeric(values[i])) {
+            addError(context, row, i, validater, "字段需要为数字！", values);
+            return false;
+        }
+        if ("Date".equals(validater) && !isValidDate(values[i])) {
+            addError(context, row, i, validater, "字段需要为日期YYYYMMDD！", values);
+            return false;
+        }
+        if (validater.startsWith("Depend") && !isValidDepend(validater, values[i], values)) {
+            addError(context, row, i, validater, "当" + validater.substring(6, validater.length()) + "有值时，字段不能为空！", values);
+            return false;
+        }
+        if (validater.startsWith("Range")) {
+            String rangStr = validater.substring(5, validater.length());
+            if (!rangStr.contains(values[i])) {
+                addError(context, row, i, validater, "字段需要为"
+                        + Arrays.toString(rangStr.split("-")).replaceAll(",", "，") + "！", values);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addError(ConversionContext context, int row, int i, String rule, String message, String[] values) {
+        int column = i - PREFIX_COUNT;
+        String header = column < headers.length ? headers[column] : "";
+        addError(context, new ValidationError(row, column, header, rule, message, values[i]));
+    }
+
+    private void addError(ConversionContext context, ValidationError error) {
+        context.getErrors().add(error);
+        context.getListener().onError(error);
+    }
+
+    private String[] resolveApplicant(String[] values, int row, ConversionContext context) {
+        String[] applicatnsArgs = applicantIndex.findById(values[ID_COLUMN]);
+        if (applicatnsArgs == null) {
+            // Fall back to name and district when the ID number is missing or mistyped
+            applicatnsArgs = applicantIndex.resolve(values[NAME_COLUMN], values[DISTRICT_COLUMN]);
+            if (applicatnsArgs != null) {
+                values[ID_COLUMN] = applicatnsArgs[ApplicantIndex.ID];
+            } else {
+                List<ApplicantIndex.Candidate> candidates = applicantIndex.candidates(values[NAME_COLUMN], values[DISTRICT_COLUMN], 3);
+                // Exact name hits are listed first, so the first candidate tells which case this is
+                if (!candidates.isEmpty() && candidates.get(0).isExactName()) {
+                    addError(context, row, PREFIX_COUNT, "Applicant", "有多位同名者，并且系统无法根据姓名，地区，身份证号来自动判断申请号！[候选："
+                            + candidates + "]", values);
+                } else if (!candidates.isEmpty()) {
+                    addError(context, row, PREFIX_COUNT, "Applicant", "总表中没有同名申请人，身份证号也对不上，无法自动判断申请号！[相近："
+                            + candidates + "]", values);
+                }
+            }
+        }
+        return applicatnsArgs;
+    }
+
+    private void writeIntoCsv(ConversionContext context) throws IOException {
+        boolean noError = context.getErrors().isEmpty();
+        File outputFile = new File(context.getOutputDir(), context.getBaseName() + (noError ? "修订后的文件.csv" : ConversionContext.REVISION_SUFFIX + ".csv"));
+        CsvWriter writer = new CsvWriter(outputFile.getPath(), OUTPUT_CHARSET);
+        try {
+            for (String[] strs : context.getRows()) {
+                writer.writeRow(strs);
+            }
+        } finally {
+            writer.close();
+        }
+        context.setOutputFile(outputFile.getPath());
+        if (!noError) {
+            File errorReportFile = new File(context.getOutputDir(), context.getBaseName() + "错误报告.csv");
+            context.getErrors().writeCsv(errorReportFile.getPath(), OUTPUT_CHARSET);
+            context.setErrorReportFile(errorReportFile.getPath());
+        }
+    }
+
+    private static String cleanValue(String str) {
+        str = StringUtils.deleteWhitespace(str);
+        if (str == null || str.trim().equals("") || str.trim().equals("(空)")) {
+            return "";
+        } else if (isNumeric(str.trim()) && Double.valueOf(str.trim()) < 0) {
+            return "";
+        } else {
+            return str.trim();
+        }
+
+    }
+
+    private static boolean isNumeric(String str) {
+        // 该正则表达式可以匹配所有的数字 包括负数
+        String bigStr;
+        try {
+            bigStr = new BigDecimal(str).toString();
+        } catch (Exception e) {
+            return false;// 异常 说明包含非数字。
+        }
+        return NUMBER_PATTERN.matcher(bigStr).matches(); // matcher是全匹配
+    }
+
+    // 读取excel
+    public static Workbook readExcel(String filePath) throws IOException {
+        Workbook wb = null;
+        if (filePath == null) {
+            return null;
+        }
+        String extString = filePath.substring(filePath.lastIndexOf("."));
+        InputStream is = new FileInputStream(filePath);
+        try {
+            if (".xls".equals(extString)) {
+                wb = new HSSFWorkbook(is);
+            } else if (".xlsx".equals(extString)) {
+                wb = new XSSFWorkbook(is);
+            }
+        } finally {
+            is.close();
+        }
+        return wb;
+    }
+
+    @SuppressWarnings("deprecation")
+    public static String getCellFormatValue(Cell cell) {
+        Object cellValue = null;
+        if (cell != null) {
+            // 判断cell类型
+            switch (cell.getCellType()) {
+                case Cell.CELL_TYPE_NUMERIC: {
+                    cellValue = String.valueOf(cell.getNumericCellValue());
+                    break;
+                }
+                case Cell.CELL_TYPE_FORMULA: {
+                    // 判断cell是否为日期格式
+                    if (DateUtil.isCellDateFormatted(cell)) {
+                        // 转换为日期格式YYYY-mm-dd
+                        cellValue = cell.getDateCellValue();
+                    } else {
+                        // 数字
+                        cellValue = String.valueOf(cell.getNumericCellValue());
+                    }
+                    break;
+                }
+                case Cell.CELL_TYPE_STRING: {
+                    cellValue = cell.getRichStringCellValue().getString();
+                    break;
+                }
+                default:
+                    cellValue = "";
+            }
+        } else {
+            cellValue = "";
+        }
+        return ((String) cellValue).trim();
+    }
+
+    public static boolean isValidDate(String str) {
+        boolean convertSuccess = true;
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        try {
+            format.setLenient(false);
+            format.parse(str);
+        } catch (ParseException e) {
+            convertSuccess = false;
+        }
+        return convertSuccess;
+    }
+
+    public boolean isValidDepend(String validater, String str, String[] values) {
+        if (StringUtils.isEmpty(str)) {
+            String paramStr = validater.substring(6, validater.length());
+            String[] params = {};
+            if (validater.contains("=")) {
+                params = paramStr.split("=");
+
+            } else if (validater.contains("in")) {
+                params = paramStr.split("in");
+            }
+            String dependValue = values[getHeaderIndex(params[0]) + PREFIX_COUNT];
+            if (!StringUtils.isEmpty(dependValue) && params[1].contains(dependValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getHeaderIndex(String header) {
+        Integer index = headerIndex.get(header);
+        if (index == null) {
+            throw new RuntimeException("配置文件有问题：" + header);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,43 @@
+package shujiaw;
+
+/**
+ * Callbacks from a running conversion. Called on the converting thread, implementations must hand off to the UI
+ * thread themselves.
+ */
+public interface ConversionListener {
+
+    ConversionListener NONE = new ConversionListener() {
+        @Override
+        public void onProgress(long rows, long bytesRead, long totalBytes) {
+        }
+
+        @Override
+        public void onError(ValidationError error) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * @param rows       data rows validated so far
+     * @param bytesRead  bytes consumed from the survey file so far
+     * @param totalBytes size of the survey file
+     */
+    void onProgress(long rows, long bytesRead, long totalBytes);
+
+    void onError(ValidationError error);
+
+    /**
+     * Called once, as soon as the first data row of the survey file is converted.
+     */
+    default void onFirstRow() {
+    }
+
+    /**
+     * Polled once per row; returning true stops the conversion before anything is written.
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,83 @@
+package shujiaw;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+
+/**
+ * Runs {@link CsvConverter#startConversion} off the JavaFX Application Thread.
+ * <p>
+ * Progress is the byte position in the survey file, the message shows rows per second, and validation errors are
+ * appended to {@code errorItems} in batches while the conversion is still running.
+ */
+public class ConversionTask extends Task<String> {
+
+    private final String wenJuanXinPath;
+    private final String applicationPath;
+    private final String assessmentPath;
+    private final ObservableList<ValidationError> errorItems;
+
+    private final ConcurrentLinkedQueue<ValidationError> pendingErrors = new ConcurrentLinkedQueue<ValidationError>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private ConversionContext context;
+
+    public ConversionTask(String wenJuanXinPath, String applicationPath, String assessmentPath,
+                          ObservableList<ValidationError> errorItems) {
+        this.wenJuanXinPath = wenJuanXinPath;
+        this.applicationPath = applicationPath;
+        this.assessmentPath = assessmentPath;
+        this.errorItems = errorItems;
+    }
+
+    @Override
+    protected String call() throws Exception {
+        updateMessage("读取总表和评估人员表...");
+        final long start = System.nanoTime();
+        CsvConverter converter = new CsvConverter();
+        String fileName = converter.startConversion(wenJuanXinPath, applicationPath, assessmentPath, new ConversionListener() {
+            @Override
+            public void onProgress(long rows, long bytesRead, long totalBytes) {
+                double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+                updateProgress(bytesRead, totalBytes);
+                updateMessage(String.format("已处理%d行（%.0f行/秒）", rows, rows / seconds));
+            }
+
+            @Override
+            public void onError(ValidationError error) {
+                pendingErrors.add(error);
+                if (drainScheduled.compareAndSet(false, true)) {
+                    Platform.runLater(ConversionTask.this::drainErrors);
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return ConversionTask.this.isCancelled();
+            }
+        });
+        context = converter.getContext();
+        return fileName;
+    }
+
+    public ConversionContext getContext() {
+        return context;
+    }
+
+    // Runs on the FX thread, one addAll per batch keeps the table from re-laying out for every error
+    private void drainErrors() {
+        drainScheduled.set(false);
+        List<ValidationError> batch = new ArrayList<ValidationError>();
+        ValidationError error;
+        while ((error = pendingErrors.poll()) != null) {
+            batch.add(error);
+        }
+        if (!batch.isEmpty()) {
+            errorItems.addAll(batch);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package shujiaw;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * CSV输出：按RFC 4180加引号，直接编码到缓冲区后整块写出。
+ * <p>
+ * Each row is collected in a reused char buffer and encoded with one reused {@link CharsetEncoder} into a large byte
+ * buffer, which goes to the stream only when it is full. A field is quoted only if it contains a comma, a quote or a
+ * line break; quotes are doubled, nothing else is changed. Rows end with CRLF. Characters the charset cannot encode
+ * (e.g. rare characters in GBK) are written as {@code ?}, as {@link java.io.PrintWriter} did.
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 1 << 18;
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private char[] line = new char[1024];
+    private int length;
+
+    public CsvWriter(String fileName, Charset charset) throws IOException {
+        this(new FileOutputStream(fileName), charset);
+    }
+
+    public CsvWriter(OutputStream out, Charset charset) {
+        this.out = out;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public void writeRow(String... fields) throws IOException {
+        length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                append(',');
+            }
+            appendField(fields[i]);
+        }
+        endRow();
+    }
+
+    public void writeRow(List<String> fields) throws IOException {
+        length = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                append(',');
+            }
+            appendField(fields.get(i));
+        }
+        endRow();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void appendField(String field) {
+        if (field == null || field.isEmpty()) {
+            return;
+        }
+        if (!needsQuotes(field)) {
+            ensureCapacity(field.length());
+            field.getChars(0, field.length(), line, length);
+            length += field.length();
+            return;
+        }
+        append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        append('"');
+    }
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        line[length++] = c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > line.length) {
+            char[] bigger = new char[Math.max(line.length * 2, length + extra)];
+            System.arraycopy(line, 0, bigger, 0, length);
+            line = bigger;
+        }
+    }
+
+    private void endRow() throws IOException {
+        append('\r');
+        append('\n');
+        CharBuffer chars = CharBuffer.wrap(line, 0, length);
+        encoder.reset();
+        // Errors are replaced, so the only result besides underflow is a full buffer
+        while (encoder.encode(chars, bytes, true).isOverflow()) {
+            drain();
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (bytes.position() > 0) {
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        }
+    }
+}
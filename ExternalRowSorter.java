@@ -0,0 +1,244 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts {@code String[]} rows by one key column with bounded memory.
+ * <p>
+ * Rows are buffered up to {@code maxRowsInMemory}; a full buffer is sorted and spilled to a temp file as a run. The
+ * sorted stream is a k-way merge of the runs and the last buffer. Rows with the same key are collapsed to the last
+ * one added, which is what building a {@code Map} by key would keep. Temp files are deleted on {@link #close()}.
+ */
+public class ExternalRowSorter implements Closeable {
+
+    private final int keyIndex;
+    private final Comparator<String> keyOrder;
+    private final int maxRowsInMemory;
+    private final Path tempDir;
+    private final List<String[]> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<DataInputStream> openRuns = new ArrayList<>();
+
+    public ExternalRowSorter(int keyIndex, Comparator<String> keyOrder, int maxRowsInMemory, Path tempDir) {
+        this.keyIndex = keyIndex;
+        this.keyOrder = keyOrder;
+        this.maxRowsInMemory = maxRowsInMemory;
+        this.tempDir = tempDir;
+    }
+
+    public void add(String[] row) throws IOException {
+        buffer.add(row);
+        if (buffer.size() >= maxRowsInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the rows in key order, one row per key; can be called once, after the last {@link #add}
+     */
+    public Iterator<String[]> sorted() throws IOException {
+        sortBuffer();
+        List<Iterator<String[]>> sources = new ArrayList<>();
+        for (Path run : runs) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            openRuns.add(in);
+            sources.add(new RunIterator(in));
+        }
+        // The in-memory rows were added last, they win over spilled rows with the same key
+        sources.add(buffer.iterator());
+        return new LastPerKeyIterator(new MergeIterator(sources));
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataInputStream in : openRuns) {
+            in.close();
+        }
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        buffer.clear();
+    }
+
+    private String key(String[] row) {
+        String key = keyIndex < row.length ? row[keyIndex] : null;
+        return key == null ? "" : key;
+    }
+
+    private void sortBuffer() {
+        // List.sort is stable, rows with equal keys keep the order they were added in
+        buffer.sort((a, b) -> keyOrder.compare(key(a), key(b)));
+    }
+
+    private void spill() throws IOException {
+        sortBuffer();
+        Path run = Files.createTempFile(tempDir, "reconcile-", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (String[] row : buffer) {
+                writeRow(out, row);
+            }
+        }
+        buffer.clear();
+    }
+
+    // writeUTF is limited to 64KB, long Excel cells are written as length-prefixed UTF-8
+    private static void writeRow(DataOutputStream out, String[] row) throws IOException {
+        out.writeInt(row.length);
+        for (String value : row) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static String[] readRow(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        String[] row = new String[length];
+        for (int i = 0; i < length; i++) {
+            int size = in.readInt();
+            if (size >= 0) {
+                byte[] bytes = new byte[size];
+                in.readFully(bytes);
+                row[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return row;
+    }
+
+    private static class RunIterator implements Iterator<String[]> {
+        private final DataInputStream in;
+        private String[] next;
+
+        RunIterator(DataInputStream in) throws IOException {
+            this.in = in;
+            this.next = readRow(in);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String[] next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String[] row = next;
+            try {
+                next = readRow(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return row;
+        }
+    }
+
+    private class MergeIterator implements Iterator<String[]> {
+        // Head row of each source, ties go to the source added first so that later rows come out later
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> {
+            int c = keyOrder.compare(key(a.row), key(b.row));
+            return c != 0 ? c : Integer.compare(a.source, b.source);
+        });
+        private final List<Iterator<String[]>> sources;
+
+        MergeIterator(List<Iterator<String[]>> sources) {
+            this.sources = sources;
+            for (int i = 0; i < sources.size(); i++) {
+                if (sources.get(i).hasNext()) {
+                    heads.add(new Head(sources.get(i).next(), i));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public String[] next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Iterator<String[]> source = sources.get(head.source);
+            if (source.hasNext()) {
+                heads.add(new Head(source.next(), head.source));
+            }
+            return head.row;
+        }
+    }
+
+    private class LastPerKeyIterator implements Iterator<String[]> {
+        private final Iterator<String[]> it;
+        private String[] pending;
+
+        LastPerKeyIterator(Iterator<String[]> it) {
+            this.it = it;
+            this.pending = it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null;
+        }
+
+        @Override
+        public String[] next() {
+            if (pending == null) {
+                throw new NoSuchElementException();
+            }
+            String[] row = pending;
+            pending = null;
+            while (it.hasNext()) {
+                String[] candidate = it.next();
+                if (keyOrder.compare(key(candidate), key(row)) == 0) {
+                    row = candidate;
+                } else {
+                    pending = candidate;
+                    break;
+                }
+            }
+            return row;
+        }
+    }
+
+    private static class Head {
+        private final String[] row;
+        private final int source;
+
+        Head(String[] row, int source) {
+            this.row = row;
+            this.source = source;
+        }
+    }
+}
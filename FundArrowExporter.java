@@ -0,0 +1,280 @@
+package fundSpider;
+
+import org.apache.arrow.dataset.file.DatasetFileWriter;
+import org.apache.arrow.dataset.file.FileFormat;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * 把爬到的基金净值按列写成Arrow IPC和Parquet文件。
+ * <p>
+ * Columns: {@code fund_code} (dictionary-encoded, one entry per fund), {@code value_date} (date32),
+ * {@code value}, {@code aggregate_value} and {@code daily_growth} (nullable float64). Files are partitioned by year of
+ * the value date:
+ * <pre>
+ * out/arrow/year=2017/part-full.arrow      out/parquet/year=2017/part-full-0.parquet
+ * out/arrow/year=2017/part-20171227.arrow  out/parquet/year=2017/part-20171227-0.parquet   (appendDay)
+ * </pre>
+ * Rows are copied straight from the {@link FundDetail}s into column vectors of {@link #BATCH_ROWS} rows, one open
+ * writer per year, so memory stays at one batch per year whatever the crawl size. The Parquet files are converted
+ * from the finished IPC files by the Arrow dataset writer.
+ * <p>
+ * Needs arrow-vector, arrow-memory-netty and arrow-dataset on the class path, and on JDK 16+
+ * {@code --add-opens=java.base/java.nio=ALL-UNNAMED}.
+ */
+public class FundArrowExporter {
+
+    static final int BATCH_ROWS = 64 * 1024;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final long DICTIONARY_ID = 0;
+
+    private final Path outDir;
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    public FundArrowExporter(Path outDir) {
+        this.outDir = outDir;
+    }
+
+    /**
+     * Writes the complete history of all funds, replacing whatever an earlier export wrote to the output directory.
+     *
+     * @return rows written
+     */
+    public long exportAll(Collection<FundBean> funds) throws IOException {
+        deleteParts(outDir.resolve("arrow"));
+        deleteParts(outDir.resolve("parquet"));
+        return write(funds, "full", Long.MIN_VALUE);
+    }
+
+    /**
+     * Writes only the rows dated {@code day} as a new file per partition; earlier files are left as they are.
+     *
+     * @return rows written
+     */
+    public long appendDay(Collection<FundBean> funds, LocalDate day) throws IOException {
+        return write(funds, String.format("%04d%02d%02d", day.getYear(), day.getMonthValue(), day.getDayOfMonth()),
+                day.toEpochDay());
+    }
+
+    private long write(Collection<FundBean> funds, String partName, long onlyDay) throws IOException {
+        // Sorted codes give a stable dictionary, and ascending codes within each file compress better
+        TreeSet<String> codes = new TreeSet<>();
+        for (FundBean fund : funds) {
+            codes.add(fund.getFundCode());
+        }
+        Map<String, FundBean> byCode = new HashMap<>();
+        for (FundBean fund : funds) {
+            byCode.put(fund.getFundCode(), fund);
+        }
+
+        long rows = 0;
+        List<File> ipcFiles = new ArrayList<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             VarCharVector dictionaryVector = new VarCharVector("fund_code", allocator)) {
+            dictionaryVector.allocateNew(codes.size());
+            int index = 0;
+            for (String code : codes) {
+                dictionaryVector.setSafe(index++, code.getBytes(StandardCharsets.UTF_8));
+            }
+            dictionaryVector.setValueCount(codes.size());
+            DictionaryEncoding encoding = new DictionaryEncoding(DICTIONARY_ID, false, new ArrowType.Int(32, true));
+            DictionaryProvider.MapDictionaryProvider provider =
+                    new DictionaryProvider.MapDictionaryProvider(new Dictionary(dictionaryVector, encoding));
+            Schema schema = schema(encoding);
+
+            Map<Integer, Partition> partitions = new HashMap<>();
+            Partition partition = null;
+            try {
+                int codeIndex = 0;
+                for (String code : codes) {
+                    List<FundDetail> details = byCode.get(code).getDetails();
+                    for (int i = 0, n = details.size(); i < n; i++) {
+                        FundDetail detail = details.get(i);
+                        Date date = detail.getValueDate();
+                        if (date == null) {
+                            continue;
+                        }
+                        long millis = date.getTime();
+                        long epochDay = Math.floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY);
+                        if (onlyDay != Long.MIN_VALUE && epochDay != onlyDay) {
+                            continue;
+                        }
+                        // Details come in date order, the year rarely changes between two rows
+                        if (partition == null || epochDay < partition.firstDay || epochDay >= partition.endDay) {
+                            int year = LocalDate.ofEpochDay(epochDay).getYear();
+                            partition = partitions.get(year);
+                            if (partition == null) {
+                                File file = outDir.resolve("arrow").resolve("year=" + year)
+                                        .resolve("part-" + partName + ".arrow").toFile();
+                                partition = new Partition(year, file, schema, provider, allocator);
+                                partitions.put(year, partition);
+                                ipcFiles.add(file);
+                            }
+                        }
+                        partition.add(codeIndex, (int) epochDay, detail);
+                        rows++;
+                    }
+                    codeIndex++;
+                }
+            } finally {
+                for (Partition p : partitions.values()) {
+                    p.close();
+                }
+            }
+
+            for (File ipcFile : ipcFiles) {
+                toParquet(allocator, ipcFile, partName);
+            }
+        }
+        return rows;
+    }
+
+    private void toParquet(BufferAllocator allocator, File ipcFile, String partName) throws IOException {
+        Path parquetDir = outDir.resolve("parquet").resolve(ipcFile.getParentFile().getName());
+        Files.createDirectories(parquetDir);
+        try (FileInputStream in = new FileInputStream(ipcFile);
+             ArrowFileReader reader = new ArrowFileReader(in.getChannel(), allocator)) {
+            DatasetFileWriter.write(allocator, reader, FileFormat.PARQUET, parquetDir.toUri().toString(),
+                    new String[0], 1, "part-" + partName + "-{i}.parquet");
+        }
+    }
+
+    private static Schema schema(DictionaryEncoding encoding) {
+        ArrowType float8 = new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        return new Schema(Arrays.asList(
+                new Field("fund_code", new FieldType(false, new ArrowType.Int(32, true), encoding), null),
+                new Field("value_date", FieldType.notNullable(new ArrowType.Date(DateUnit.DAY)), null),
+                new Field("value", FieldType.nullable(float8), null),
+                new Field("aggregate_value", FieldType.nullable(float8), null),
+                new Field("daily_growth", FieldType.nullable(float8), null)));
+    }
+
+    // Removes part-* files of earlier exports from the year=* directories
+    private static void deleteParts(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> years = Files.newDirectoryStream(dir, "year=*")) {
+            for (Path year : years) {
+                try (DirectoryStream<Path> parts = Files.newDirectoryStream(year, "part-*")) {
+                    for (Path part : parts) {
+                        Files.delete(part);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * One year's IPC file and the batch being filled for it.
+     */
+    private static class Partition implements AutoCloseable {
+        final long firstDay;
+        final long endDay;
+        private final VectorSchemaRoot root;
+        private final FileOutputStream out;
+        private final ArrowFileWriter writer;
+        private final IntVector code;
+        private final DateDayVector date;
+        private final Float8Vector value;
+        private final Float8Vector aggregateValue;
+        private final Float8Vector dailyGrowth;
+        private int count;
+
+        Partition(int year, File file, Schema schema, DictionaryProvider provider, BufferAllocator allocator)
+                throws IOException {
+            firstDay = LocalDate.of(year, 1, 1).toEpochDay();
+            endDay = LocalDate.of(year + 1, 1, 1).toEpochDay();
+            Files.createDirectories(file.getParentFile().toPath());
+            root = VectorSchemaRoot.create(schema, allocator);
+            code = (IntVector) root.getVector("fund_code");
+            date = (DateDayVector) root.getVector("value_date");
+            value = (Float8Vector) root.getVector("value");
+            aggregateValue = (Float8Vector) root.getVector("aggregate_value");
+            dailyGrowth = (Float8Vector) root.getVector("daily_growth");
+            for (FieldVector vector : root.getFieldVectors()) {
+                vector.setInitialCapacity(BATCH_ROWS);
+                vector.allocateNew();
+            }
+            out = new FileOutputStream(file);
+            writer = new ArrowFileWriter(root, provider, out.getChannel());
+            writer.start();
+        }
+
+        void add(int codeIndex, int epochDay, FundDetail detail) throws IOException {
+            code.set(count, codeIndex);
+            date.set(count, epochDay);
+            set(value, detail.getValue());
+            set(aggregateValue, detail.getAggregateValue());
+            set(dailyGrowth, detail.getDailyGrowth());
+            if (++count == BATCH_ROWS) {
+                flush();
+            }
+        }
+
+        // Every slot is written as a value or a null, so the vectors are reused across batches without a reset
+        private void set(Float8Vector vector, Double v) {
+            if (v == null) {
+                vector.setNull(count);
+            } else {
+                vector.set(count, v);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (count > 0) {
+                root.setRowCount(count);
+                writer.writeBatch();
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                writer.end();
+            } finally {
+                writer.close();
+                out.close();
+                root.close();
+            }
+        }
+    }
+}
@@ -7,9 +7,12 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import util.HTMLReader;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -27,7 +30,11 @@ public class FundCrawler {
     ArrayList<String> notCrawlurlSet = new ArrayList<>();//未爬过的网页url
     static Map<String, FundBean> fundMap = new HashMap<>();
 
-    public static void main(String[] args) throws InterruptedException {
+    /**
+     * 参数可选：[输出目录 [yyyy-MM-dd]]。给了输出目录时把结果导出为Arrow/Parquet，再给日期则只追加当天的数据。
+     * 设置了 -Dfund.server.port 时爬完后直接用内存中的结果启动 {@link FundSeriesServer}。
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
         long start = System.currentTimeMillis();
         final FundCrawler wc = new FundCrawler();
         wc.parseHomePage("http://fund.eastmoney.com/LJ_jzzzl.html#os_0;isall_0;ft_;pt_11");
@@ -40,7 +47,17 @@ public class FundCrawler {
         System.out.println("总共爬了" + wc.allurlSet.size() + "个网页");
         System.out.println("总共耗时" + (end - start) / 1000 + "秒");
         System.out.println("总共耗时" + (end - start) / 1000 + "秒");
-        fundMap.size();
+        if (args.length > 0) {
+            FundArrowExporter exporter = new FundArrowExporter(Paths.get(args[0]));
+            long rows = args.length > 1 ? exporter.appendDay(fundMap.values(), LocalDate.parse(args[1]))
+                    : exporter.exportAll(fundMap.values());
+            System.out.println("导出" + rows + "行到" + args[0] + "，耗时" + (System.currentTimeMillis() - end) / 1000 + "秒");
+        }
+        String port = System.getProperty("fund.server.port");
+        if (port != null) {
+            new FundSeriesServer(FundSeriesStore.of(fundMap), Integer.parseInt(port), 256L * 1024 * 1024,
+                    Runtime.getRuntime().availableProcessors() * 2).start();
+        }
     }
 
     private void begin(ExecutorService executorService) {
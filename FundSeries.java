@@ -0,0 +1,176 @@
+package fundSpider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * NAV history of one fund in primitive form: days since 1970-01-01 in ascending order and one double per column,
+ * {@code NaN} where the crawled value was empty.
+ */
+public class FundSeries {
+
+    private final String code;
+    private final int[] days;
+    private final double[] value;
+    private final double[] aggregateValue;
+    private final double[] dailyGrowth;
+
+    private FundSeries(String code, int[] days, double[] value, double[] aggregateValue, double[] dailyGrowth) {
+        this.code = code;
+        this.days = days;
+        this.value = value;
+        this.aggregateValue = aggregateValue;
+        this.dailyGrowth = dailyGrowth;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int size() {
+        return days.length;
+    }
+
+    /**
+     * Approximate heap size, used to bound the cache.
+     */
+    public long sizeInBytes() {
+        return 64 + 2L * code.length() + 28L * days.length;
+    }
+
+    /**
+     * Index of the first day {@code >= day}.
+     */
+    public int lowerBound(int day) {
+        int i = Arrays.binarySearch(days, day);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /**
+     * Index after the last day {@code <= day}.
+     */
+    public int upperBound(int day) {
+        int i = Arrays.binarySearch(days, day);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Rows {@code [from, to)} as {@code {"code":..,"dates":[..],"value":[..],"aggregateValue":[..],"dailyGrowth":[..]}}.
+     */
+    public byte[] toJson(int from, int to) {
+        StringBuilder sb = new StringBuilder(64 + (to - from) * 48);
+        sb.append("{\"code\":\"").append(code).append("\",\"dates\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sb.append(',');
+            }
+            sb.append('"').append(LocalDate.ofEpochDay(days[i])).append('"');
+        }
+        sb.append("],\"value\":");
+        array(sb, value, from, to);
+        sb.append(",\"aggregateValue\":");
+        array(sb, aggregateValue, from, to);
+        sb.append(",\"dailyGrowth\":");
+        array(sb, dailyGrowth, from, to);
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The most recent row as {@code {"code":..,"date":..,"value":..,"aggregateValue":..,"dailyGrowth":..}}.
+     */
+    public byte[] latestJson() {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"code\":\"").append(code).append('"');
+        if (days.length > 0) {
+            int last = days.length - 1;
+            sb.append(",\"date\":\"").append(LocalDate.ofEpochDay(days[last])).append('"');
+            sb.append(",\"value\":");
+            number(sb, value[last]);
+            sb.append(",\"aggregateValue\":");
+            number(sb, aggregateValue[last]);
+            sb.append(",\"dailyGrowth\":");
+            number(sb, dailyGrowth[last]);
+        }
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void array(StringBuilder sb, double[] values, int from, int to) {
+        sb.append('[');
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sb.append(',');
+            }
+            number(sb, values[i]);
+        }
+        sb.append(']');
+    }
+
+    private static void number(StringBuilder sb, double v) {
+        if (Double.isNaN(v)) {
+            sb.append("null");
+        } else {
+            sb.append(v);
+        }
+    }
+
+    /**
+     * Collects rows in any order; {@link #build} sorts them by day and keeps the last row added for a day, so rows
+     * from a later incremental file win over the full export.
+     */
+    public static class Builder {
+        private final String code;
+        private int[] days = new int[256];
+        private double[] value = new double[256];
+        private double[] aggregateValue = new double[256];
+        private double[] dailyGrowth = new double[256];
+        private int count;
+
+        public Builder(String code) {
+            this.code = code;
+        }
+
+        public Builder add(int day, double value, double aggregateValue, double dailyGrowth) {
+            if (count == days.length) {
+                int capacity = count * 2;
+                days = Arrays.copyOf(days, capacity);
+                this.value = Arrays.copyOf(this.value, capacity);
+                this.aggregateValue = Arrays.copyOf(this.aggregateValue, capacity);
+                this.dailyGrowth = Arrays.copyOf(this.dailyGrowth, capacity);
+            }
+            days[count] = day;
+            this.value[count] = value;
+            this.aggregateValue[count] = aggregateValue;
+            this.dailyGrowth[count] = dailyGrowth;
+            count++;
+            return this;
+        }
+
+        public FundSeries build() {
+            // (day, insertion position) packed in one long, so a primitive sort orders by day and then by arrival
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = ((long) days[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (i + 1 == count || (int) (order[i] >> 32) != (int) (order[i + 1] >> 32)) {
+                    order[unique++] = order[i];
+                }
+            }
+            int[] d = new int[unique];
+            double[] v = new double[unique];
+            double[] a = new double[unique];
+            double[] g = new double[unique];
+            for (int i = 0; i < unique; i++) {
+                int from = (int) order[i];
+                d[i] = days[from];
+                v[i] = value[from];
+                a[i] = aggregateValue[from];
+                g[i] = dailyGrowth[from];
+            }
+            return new FundSeries(code, d, v, a, g);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package fundSpider;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 基金净值查询接口，供其他团队直接读爬虫结果。
+ * <pre>
+ * GET /funds/{code}                              全部净值
+ * GET /funds/{code}?from=yyyy-MM-dd&amp;to=yyyy-MM-dd  日期区间（两端都可省略）
+ * GET /funds/{code}/latest                       最新一天
+ * GET /stats                                     缓存命中情况
+ * </pre>
+ * Series come from a {@link FundSeriesStore} and are kept in an LRU cache bounded by {@code maxCacheBytes}, together
+ * with the full-series and latest responses, plain and gzipped, with their ETag. A cached request therefore only
+ * copies bytes, whatever its {@code Accept-Encoding}; {@code If-None-Match} answers 304. Range responses are cut from the cached series with a binary
+ * search and compressed per request. Concurrent misses on the same fund share one load.
+ */
+public class FundSeriesServer implements AutoCloseable {
+
+    static final int MIN_GZIP_BYTES = 512;
+
+    private final FundSeriesStore store;
+    private final long maxCacheBytes;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, FutureTask<Entry>> loading = new ConcurrentHashMap<>();
+    private long cacheBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FundSeriesServer(FundSeriesStore store, int port, long maxCacheBytes, int threads) throws IOException {
+        this.store = store;
+        this.maxCacheBytes = maxCacheBytes;
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/funds/", this::handleFund);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * FundSeriesServer &lt;导出目录&gt; [-port 8080] [-cacheMb 256] [-threads n]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("用法：FundSeriesServer <导出目录> [-port 8080] [-cacheMb 256] [-threads n]");
+            System.exit(1);
+        }
+        List<String> options = Arrays.asList(args);
+        ArrowSeriesStore store = new ArrowSeriesStore(Paths.get(args[0]));
+        FundSeriesServer server = new FundSeriesServer(store, Integer.parseInt(option(options, "-port", "8080")),
+                Long.parseLong(option(options, "-cacheMb", "256")) * 1024 * 1024,
+                Integer.parseInt(option(options, "-threads", String.valueOf(Runtime.getRuntime().availableProcessors() * 2))));
+        server.start();
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("基金净值接口已启动，端口" + server.getAddress().getPort());
+    }
+
+    /**
+     * Drops every cached series, e.g. after new data was crawled or appended.
+     */
+    public synchronized void invalidateAll() {
+        cache.clear();
+        cacheBytes = 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleFund(HttpExchange exchange) throws IOException {
+        try {
+            if (!isRead(exchange)) {
+                return;
+            }
+            String path = exchange.getRequestURI().getPath().substring("/funds/".length());
+            boolean latest = path.endsWith("/latest");
+            String code = latest ? path.substring(0, path.length() - "/latest".length()) : path;
+            Entry entry = entry(code);
+            if (entry == null) {
+                send(exchange, 404, error("unknown fund " + code));
+                return;
+            }
+            if (latest) {
+                respond(exchange, entry.latest);
+                return;
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query == null || query.isEmpty()) {
+                respond(exchange, entry.full);
+                return;
+            }
+            FundSeries series = entry.series;
+            int from = 0;
+            int to = series.size();
+            for (String param : query.split("&")) {
+                if (param.startsWith("from=")) {
+                    from = series.lowerBound((int) LocalDate.parse(param.substring(5)).toEpochDay());
+                } else if (param.startsWith("to=")) {
+                    to = series.upperBound((int) LocalDate.parse(param.substring(3)).toEpochDay());
+                }
+            }
+            to = Math.max(from, to);
+            respond(exchange, Response.of(series.toJson(from, to), entry.tag + "-" + from + "-" + to));
+        } catch (DateTimeParseException e) {
+            send(exchange, 400, error("dates must be yyyy-MM-dd"));
+        } catch (IOException | RuntimeException e) {
+            // Once the headers are out, e.g. the client went away while the body was written, only closing is left
+            if (exchange.getResponseCode() == -1) {
+                send(exchange, 500, error(String.valueOf(e.getMessage())));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            if (!isRead(exchange)) {
+                return;
+            }
+            int entries;
+            long bytes;
+            synchronized (this) {
+                entries = cache.size();
+                bytes = cacheBytes;
+            }
+            send(exchange, 200, "{\"hits\":" + hits.sum() + ",\"misses\":" + misses.sum() + ",\"entries\":" + entries
+                    + ",\"bytes\":" + bytes + ",\"maxBytes\":" + maxCacheBytes + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isRead(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (method.equals("GET") || method.equals("HEAD")) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return false;
+    }
+
+    private Entry entry(String code) throws IOException {
+        synchronized (this) {
+            Entry entry = cache.get(code);
+            if (entry != null) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        FutureTask<Entry> task = new FutureTask<>(() -> {
+            FundSeries series = store.load(code);
+            return series == null ? null : new Entry(series);
+        });
+        FutureTask<Entry> running = loading.putIfAbsent(code, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(code, task);
+            }
+        }
+        Entry entry;
+        try {
+            entry = running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted loading " + code, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("loading " + code, e.getCause());
+        }
+        if (entry != null && running == task) {
+            put(code, entry);
+        }
+        return entry;
+    }
+
+    private synchronized void put(String code, Entry entry) {
+        Entry old = cache.put(code, entry);
+        if (old != null) {
+            cacheBytes -= old.bytes;
+        }
+        cacheBytes += entry.bytes;
+        Iterator<Entry> eldest = cache.values().iterator();
+        // Keeps at least the entry just added, even if it alone is over the limit
+        while (cacheBytes > maxCacheBytes && cache.size() > 1) {
+            cacheBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("ETag", response.etag);
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (response.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        byte[] body = response.plain;
+        if (response.gzipped != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            body = response.gzipped;
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * {@code {"error":"message"}}, the message escaped as a JSON string.
+     */
+    static String error(String message) {
+        StringBuilder sb = new StringBuilder(message.length() + 16).append("{\"error\":\"");
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append("\"}").toString();
+    }
+
+    /**
+     * True if {@code Accept-Encoding} allows gzip: listed, or covered by {@code *}, with a q-value above 0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzip = -1;
+        double any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = q;
+            } else if (name.equals("*")) {
+                any = q;
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    private static String option(List<String> options, String name, String defaultValue) {
+        int index = options.indexOf(name);
+        return index >= 0 && index + 1 < options.size() ? options.get(index + 1) : defaultValue;
+    }
+
+    /**
+     * A cached series with its precomputed responses.
+     */
+    private static class Entry {
+        final FundSeries series;
+        final Response full;
+        final Response latest;
+        final String tag;
+        final long bytes;
+
+        Entry(FundSeries series) {
+            this.series = series;
+            byte[] json = series.toJson(0, series.size());
+            tag = Response.tag(json);
+            full = Response.of(json, tag);
+            latest = Response.of(series.latestJson(), null);
+            bytes = series.sizeInBytes() + full.size() + latest.size();
+        }
+    }
+
+    private static class Response {
+        final byte[] plain;
+        // null below MIN_GZIP_BYTES
+        final byte[] gzipped;
+        final String etag;
+
+        private Response(byte[] plain, byte[] gzipped, String etag) {
+            this.plain = plain;
+            this.gzipped = gzipped;
+            this.etag = etag;
+        }
+
+        /**
+         * Keeps the JSON and, from {@link #MIN_GZIP_BYTES} on, its gzipped form. Without an explicit tag the ETag is a
+         * hash of the JSON; it is weak because the gzipped and plain bodies share it.
+         */
+        static Response of(byte[] json, String etag) {
+            etag = "W/\"" + (etag == null ? tag(json) : etag) + "\"";
+            if (json.length < MIN_GZIP_BYTES) {
+                return new Response(json, null, etag);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Response(json, bytes.toByteArray(), etag);
+        }
+
+        long size() {
+            return plain.length + (gzipped == null ? 0 : gzipped.length);
+        }
+
+        // 64-bit FNV-1a
+        static String tag(byte[] bytes) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            return Long.toHexString(hash);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package fundSpider;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Where {@link FundSeriesServer} reads a fund's history from when it is not cached.
+ */
+public interface FundSeriesStore {
+
+    /**
+     * @return the fund's series, or null if the code is unknown
+     */
+    FundSeries load(String code) throws IOException;
+
+    /**
+     * The crawler's in-memory result, for a server started by {@link FundCrawler} once the crawl has finished.
+     */
+    static FundSeriesStore of(Map<String, FundBean> funds) {
+        TimeZone timeZone = TimeZone.getDefault();
+        return code -> {
+            FundBean fund = funds.get(code);
+            if (fund == null) {
+                return null;
+            }
+            FundSeries.Builder builder = new FundSeries.Builder(code);
+            List<FundDetail> details = fund.getDetails();
+            for (FundDetail detail : details) {
+                Date date = detail.getValueDate();
+                if (date == null) {
+                    continue;
+                }
+                long millis = date.getTime();
+                builder.add((int) Math.floorDiv(millis + timeZone.getOffset(millis), 24L * 60 * 60 * 1000),
+                        nan(detail.getValue()), nan(detail.getAggregateValue()), nan(detail.getDailyGrowth()));
+            }
+            return builder.build();
+        };
+    }
+
+    static double nan(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+}
@@ -0,0 +1,44 @@
+package shujiaw;
+
+import javafx.concurrent.Task;
+
+/**
+ * Runs {@link XmlGenerator#generate} off the JavaFX Application Thread, reporting rows and megabytes per second.
+ */
+public class GenerationTask extends Task<Long> {
+
+    private final String csvPath;
+    private final String xmlPath;
+
+    public GenerationTask(String csvPath, String xmlPath) {
+        this.csvPath = csvPath;
+        this.xmlPath = xmlPath;
+    }
+
+    public String getXmlPath() {
+        return xmlPath;
+    }
+
+    @Override
+    protected Long call() throws Exception {
+        final long start = System.nanoTime();
+        return new XmlGenerator().generate(csvPath, xmlPath, new ConversionListener() {
+            @Override
+            public void onProgress(long rows, long bytesRead, long totalBytes) {
+                double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+                updateProgress(bytesRead, totalBytes);
+                updateMessage(String.format("已生成%d条（%.0f条/秒，%.1fMB/秒）", rows, rows / seconds,
+                        bytesRead / seconds / (1024 * 1024)));
+            }
+
+            @Override
+            public void onError(ValidationError error) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return GenerationTask.this.isCancelled();
+            }
+        });
+    }
+}
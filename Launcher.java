@@ -0,0 +1,12 @@
+package shujiaw;
+
+/**
+ * Entry point of the packaged jar. JavaFX 11+ refuses to start a main class that extends {@code Application} when
+ * JavaFX is on the class path instead of the module path, so the jar starts {@link MainApp} from here.
+ */
+public class Launcher {
+
+    public static void main(String[] args) {
+        MainApp.main(args);
+    }
+}
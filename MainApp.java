@@ -2,6 +2,8 @@ package shujiaw;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javafx.application.Application;
 import javafx.event.ActionEvent;
@@ -9,6 +11,9 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TableView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.FileChooser;
@@ -31,11 +36,40 @@ public class MainApp extends Application {
     @FXML
     private Label updatedFileName;
     private File updatedFile;
+    @FXML
+    private Button startConversionButton;
+    @FXML
+    private Button cancelConversionButton;
+    @FXML
+    private ProgressBar conversionProgress;
+    @FXML
+    private Label conversionStatus;
+    @FXML
+    private TableView<ValidationError> errorTable;
+    @FXML
+    private Button startGenerationButton;
+    @FXML
+    private ProgressBar generationProgress;
+    @FXML
+    private Label generationStatus;
+    private ConversionTask conversionTask;
+
+    // Conversion and XML generation run one at a time off the FX thread; daemon so they do not keep the JVM alive
+    private static final ExecutorService conversionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "conversion");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
         this.primaryStage.setTitle("转换工具");
+        // POI and opencsv load while the user picks files
+        this.primaryStage.setOnShown(event -> {
+            StartupBenchmark.windowShown();
+            ClassPreloader.start();
+        });
 
         initRootLayout();
 
@@ -126,43 +160,89 @@ public class MainApp extends Application {
     }
 
     public void startConversionButtonAction(ActionEvent actionEvent) {
-        Alert alert;
         if (wenJuanXinFileName.getText().contains("未选择") || assessmentFileName.getText().contains("未选择") || applicationFileName.getText().contains("未选择")) {
-            alert = new Alert(Alert.AlertType.ERROR);
+            Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("错误");
             alert.setHeaderText("请检查");
             alert.setContentText("必须先选择问卷星，总表和评估人员表！");
-        }else{
-            try{
-                CsvConverter converter = new CsvConverter();
-                String fileName = converter.startConversion(wenJuanXinFile.getPath(), applicationFile.getPath(), assessmentFile.getPath());
+            alert.show();
+            return;
+        }
+        errorTable.getItems().clear();
+        final ConversionTask task = new ConversionTask(wenJuanXinFile.getPath(), applicationFile.getPath(),
+                assessmentFile.getPath(), errorTable.getItems());
+        conversionProgress.progressProperty().bind(task.progressProperty());
+        conversionStatus.textProperty().bind(task.messageProperty());
+        startConversionButton.disableProperty().bind(task.runningProperty());
+        cancelConversionButton.disableProperty().bind(task.runningProperty().not());
+
+        task.setOnSucceeded(event -> {
+            Alert alert;
+            ConversionContext context = task.getContext();
+            ValidationErrors errors = context.getErrors();
+            if (errors.isEmpty()) {
                 alert = new Alert(Alert.AlertType.INFORMATION);
                 alert.setTitle("成功");
                 alert.setHeaderText("文件转换成功！");
-                alert.setContentText(fileName);
-            }catch(Exception e){
-                alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("系统错误");
-                alert.setHeaderText("请检查文件是否选错");
-                alert.setContentText(e.getMessage());
+                alert.setContentText(context.getOutputFile());
+            } else {
+                alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("需修改");
+                alert.setHeaderText(errors.getRowCount() + "行共" + errors.size() + "处错误，详见下方列表和错误报告");
+                alert.setContentText(context.getOutputFile() + "\n" + context.getErrorReportFile());
             }
+            alert.show();
+        });
+        task.setOnFailed(event -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("系统错误");
+            alert.setHeaderText("请检查文件是否选错");
+            alert.setContentText(task.getException() == null ? "" : task.getException().getMessage());
+            alert.show();
+        });
+        task.setOnCancelled(event -> {
+            conversionStatus.textProperty().unbind();
+            conversionStatus.setText("已取消");
+        });
+        conversionTask = task;
+        conversionExecutor.submit(task);
+    }
+
+    public void cancelConversionButtonAction(ActionEvent actionEvent) {
+        if (conversionTask != null) {
+            conversionTask.cancel();
         }
-        alert.show();
     }
 
     public void startGenerationButtonAction(ActionEvent actionEvent) {
-        Alert alert;
         if (updatedFileName.getText().contains("未选择")) {
-            alert = new Alert(Alert.AlertType.ERROR);
+            Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("错误");
             alert.setHeaderText("请检查");
             alert.setContentText("必须先选择修订后的文件！");
-        }else{
-            alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle("成功");
-            alert.setHeaderText("文件生成成功！");
-            alert.setContentText("[生成后的文件.xml]");
+            alert.show();
+            return;
         }
-        alert.show();
+        File xmlFile = new File(updatedFile.getParentFile(), "生成后的文件.xml");
+        final GenerationTask task = new GenerationTask(updatedFile.getPath(), xmlFile.getPath());
+        generationProgress.progressProperty().bind(task.progressProperty());
+        generationStatus.textProperty().bind(task.messageProperty());
+        startGenerationButton.disableProperty().bind(task.runningProperty());
+
+        task.setOnSucceeded(event -> {
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("成功");
+            alert.setHeaderText("文件生成成功！共" + task.getValue() + "条");
+            alert.setContentText("[" + task.getXmlPath() + "]");
+            alert.show();
+        });
+        task.setOnFailed(event -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("系统错误");
+            alert.setHeaderText("请检查文件是否选错");
+            alert.setContentText(task.getException() == null ? "" : task.getException().getMessage());
+            alert.show();
+        });
+        conversionExecutor.submit(task);
     }
 }
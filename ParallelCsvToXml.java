@@ -0,0 +1,269 @@
+package work;
+
+import com.opencsv.CSVReader;
+import shujiaw.XmlGenerator;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 大文件CSV转XML的并行模式。
+ * <p>
+ * The input is memory-mapped and cut into chunks at record boundaries: a newline only ends a record outside a quoted
+ * field. Quotes and newlines are below 0x40 and never appear inside a GBK double-byte character, so the boundaries
+ * can be found on the raw bytes. Each chunk is parsed with opencsv and written as an XML fragment to a temp file in
+ * parallel; the fragments are then appended to the output in order with {@link FileChannel#transferTo}.
+ * <p>
+ * Boundary detection follows RFC 4180 quoting ({@code ""} inside quotes). A backslash-escaped quote inside a quoted
+ * field, which opencsv would also accept, is not supported in this mode.
+ */
+public class ParallelCsvToXml {
+
+    private static final Charset INPUT_CHARSET = Charset.forName("gbk");
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Mapping window for the boundary scan, each chunk is mapped on its own
+    private static final long SCAN_WINDOW = 1L << 28;
+
+    private final int threads;
+    private final long chunkSize;
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    public ParallelCsvToXml(int threads, long chunkSize) {
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Converts {@code csv} (GBK, title on line 1, element names on line 2) into {@code xml}.
+     *
+     * @return the number of {@code <SQ>} elements written
+     */
+    public long convert(Path csv, Path xml) throws IOException, InterruptedException {
+        try (FileChannel in = FileChannel.open(csv, StandardOpenOption.READ)) {
+            List<Long> boundaries = findBoundaries(in);
+            if (boundaries.size() < 3) {
+                // Not even a header line, write an empty list
+                writeDocument(xml, new ArrayList<Path>());
+                return 0;
+            }
+            String[] headers = parseRecord(in, boundaries.get(1), boundaries.get(2));
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+            try {
+                for (int i = 2; i + 1 < boundaries.size(); i++) {
+                    futures.add(executor.submit(new ChunkTask(in, boundaries.get(i), boundaries.get(i + 1), headers,
+                            xml.toAbsolutePath().getParent())));
+                }
+                List<Path> fragments = new ArrayList<Path>();
+                long rows = 0;
+                try {
+                    for (Future<Chunk> future : futures) {
+                        Chunk chunk = future.get();
+                        fragments.add(chunk.fragment);
+                        rows += chunk.rows;
+                    }
+                    writeDocument(xml, fragments);
+                } catch (ExecutionException e) {
+                    throw new IOException("第" + (fragments.size() + 1) + "块转换失败：" + e.getCause().getMessage(), e.getCause());
+                } finally {
+                    for (Future<Chunk> future : futures) {
+                        if (future.isDone() && !future.isCancelled()) {
+                            try {
+                                Files.deleteIfExists(future.get().fragment);
+                            } catch (ExecutionException ignored) {
+                                // Failed chunk, nothing was left behind
+                            }
+                        } else {
+                            future.cancel(true);
+                        }
+                    }
+                }
+                return rows;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Returns the start offsets of record 1 (title), record 2 (header), the data chunks and the end of the file.
+     * Chunk boundaries are the first record end at or after every {@code chunkSize} bytes.
+     */
+    private List<Long> findBoundaries(FileChannel in) throws IOException {
+        long size = in.size();
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+        boolean inQuotes = false;
+        int records = 0;
+        long next = 0;
+        for (long windowStart = 0; windowStart < size; windowStart += SCAN_WINDOW) {
+            long windowSize = Math.min(SCAN_WINDOW, size - windowStart);
+            MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                byte b = window.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    long end = windowStart + i + 1;
+                    if (records < 2) {
+                        // Title and header lines are boundaries of their own
+                        records++;
+                        boundaries.add(end);
+                        next = end + chunkSize;
+                    } else if (end >= next && end < size) {
+                        boundaries.add(end);
+                        next = end + chunkSize;
+                    }
+                }
+            }
+        }
+        if (boundaries.get(boundaries.size() - 1) < size) {
+            boundaries.add(size);
+        }
+        return boundaries;
+    }
+
+    private String[] parseRecord(FileChannel in, long start, long end) throws IOException {
+        CSVReader reader = new CSVReader(new InputStreamReader(
+                new ByteBufferInputStream(in.map(FileChannel.MapMode.READ_ONLY, start, end - start)), INPUT_CHARSET));
+        try {
+            String[] record = reader.readNext();
+            return record == null ? new String[0] : record;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeDocument(Path xml, List<Path> fragments) throws IOException {
+        String nl = System.lineSeparator();
+        try (FileChannel out = FileChannel.open(xml, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(out, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + nl + "<XMLDATA>" + nl + "<MAIN>" + nl
+                    + "<SQLIST>" + nl);
+            for (Path fragment : fragments) {
+                try (FileChannel src = FileChannel.open(fragment, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = src.size();
+                    while (position < size) {
+                        position += src.transferTo(position, size - position, out);
+                    }
+                }
+            }
+            writeFully(out, "</SQLIST>" + nl + "</MAIN>" + nl + "</XMLDATA>" + nl);
+        }
+    }
+
+    private static void writeFully(FileChannel out, String str) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static class Chunk {
+        private final Path fragment;
+        private final long rows;
+
+        Chunk(Path fragment, long rows) {
+            this.fragment = fragment;
+            this.rows = rows;
+        }
+    }
+
+    private class ChunkTask implements Callable<Chunk> {
+        private final FileChannel in;
+        private final long start;
+        private final long end;
+        private final String[] headers;
+        private final Path tempDir;
+
+        ChunkTask(FileChannel in, long start, long end, String[] headers, Path tempDir) {
+            this.in = in;
+            this.start = start;
+            this.end = end;
+            this.headers = headers;
+            this.tempDir = tempDir;
+        }
+
+        @Override
+        public Chunk call() throws Exception {
+            Path fragment = Files.createTempFile(tempDir, "sqlist-", ".xml.part");
+            MappedByteBuffer slice = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            CSVReader reader = new CSVReader(new InputStreamReader(new ByteBufferInputStream(slice), INPUT_CHARSET));
+            Writer out = new BufferedWriter(Channels.newWriter(FileChannel.open(fragment, StandardOpenOption.WRITE),
+                    StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+            long rows = 0;
+            try {
+                XMLStreamWriter writer;
+                // XMLOutputFactory is not guaranteed to be thread-safe
+                synchronized (outputFactory) {
+                    writer = outputFactory.createXMLStreamWriter(out);
+                }
+                String[] values;
+                while ((values = reader.readNext()) != null) {
+                    XmlGenerator.writeRow(writer, headers, values);
+                    rows++;
+                }
+                writer.flush();
+            } catch (Exception e) {
+                out.close();
+                Files.deleteIfExists(fragment);
+                throw e;
+            } finally {
+                reader.close();
+                out.close();
+            }
+            return new Chunk(fragment, rows);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -1,78 +1,116 @@
-package work;
-
-import com.opencsv.CSVReader;
-
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.util.Arrays;
-import java.util.Iterator;
-
-public class ReadCSV2 {
-    private static String NULL = "(空)";
-    private static String[] GENDER_MATCHES = {"男", "女"};
-
-    public static void main(String[] args) throws Exception {
-
-        CSVReader reader = new CSVReader(new InputStreamReader(
-                new FileInputStream("\\\\znn6f2\\u_t1464156519\\shujiaw\\Desktop\\Others\\non-work\\34.csv"), "gbk"));
-        //XML file
-        PrintWriter writer = new PrintWriter("\\\\znn6f2\\u_t1464156519\\shujiaw\\Desktop\\Others\\non-work\\result.xml", "UTF-8");
-        //Error report
-        PrintWriter writerError = new PrintWriter("\\\\znn6f2\\u_t1464156519\\shujiaw\\Desktop\\Others\\non-work\\error.csv", "UTF-8");
-        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        writer.println("<XMLDATA>");
-        writer.println("<MAIN>");
-        writer.println("<SQLIST>");
-        Iterator<String[]> it = reader.iterator();
-        String[] headers = {};
-        int line = 1;
-        while (it.hasNext()) {
-            String[] nextLine = it.next();
-
-            if (line == 2) {
-                headers = nextLine;
-            } else if(line > 2) {
-                writer.println("<SQ>");
-                for (int i = 0; i < nextLine.length; i++) {
-                    writer.println("<" + headers[i] + ">" + nextLine[i] + "</" + headers[i] + ">");
-                }
-                writer.println("</SQ>");
-            }
-            line++;
-        }
-        writer.println("</SQLIST>");
-        writer.println("</MAIN>");
-        writer.println("</XMLDATA>");
-        writer.close();
-        writerError.close();//TODO move into finally block
-    }
-
-    private static String cleanStr(String[] strs, int num, boolean required) {
-        String str = strs[num];
-        if (required && (str == null || str.equals(NULL) || str.trim().equals(""))) {
-            throw new RuntimeException("第" + num + "列！必填字段不能为空！");
-        }
-        if (str != null && str.equals(NULL)) {
-            return "";
-        } else {
-            return str.trim();//TODO consider if need remove start space
-        }
-    }
-
-    private static String cleanStr(String[] strs, int num, boolean required, String[] matches) {
-        String str = cleanStr(strs, num, required);
-        int responseNum = -1;
-        for (int i = 0; i < matches.length; i++) {
-            if (str.equals(matches[i])) {
-                responseNum = i + 1;
-                break;
-            }
-        }
-        if (responseNum > -1) {
-            return String.valueOf(responseNum);
-        } else {
-            throw new RuntimeException("第" + num + "列！输入的值[" + str + "]不正确，应该为(" + Arrays.toString(matches) + ")中的一种!");
-        }
-    }
-}
+package work;
+
+import com.opencsv.CSVReader;
+import shujiaw.CsvWriter;
+import shujiaw.XmlGenerator;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class ReadCSV2 {
+    private static String NULL = "(空)";
+    private static String[] GENDER_MATCHES = {"男", "女"};
+
+    private static String DIR = "\\\\znn6f2\\u_t1464156519\\shujiaw\\Desktop\\Others\\non-work\\";
+    // Chunk size of the parallel mode
+    private static long CHUNK_SIZE = 32L << 20;
+
+    /**
+     * ReadCSV2 [input.csv output.xml] [-parallel [threads]]
+     */
+    public static void main(String[] args) throws Exception {
+        String input = args.length >= 2 && !args[0].startsWith("-") ? args[0] : DIR + "34.csv";
+        String output = args.length >= 2 && !args[0].startsWith("-") ? args[1] : DIR + "result.xml";
+        int parallelFlag = Arrays.asList(args).indexOf("-parallel");
+        long start = System.currentTimeMillis();
+        long rows;
+        if (parallelFlag >= 0) {
+            int threads = parallelFlag + 1 < args.length ? Integer.parseInt(args[parallelFlag + 1])
+                    : Runtime.getRuntime().availableProcessors();
+            rows = new ParallelCsvToXml(threads, CHUNK_SIZE).convert(Paths.get(input), Paths.get(output));
+        } else {
+            rows = convert(input, output);
+        }
+        System.out.println("共" + rows + "条，耗时" + (System.currentTimeMillis() - start) + "毫秒");
+    }
+
+    private static long convert(String input, String output) throws Exception {
+        CSVReader reader = new CSVReader(new InputStreamReader(new FileInputStream(input), "gbk"));
+        //XML file
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), 1 << 16);
+        //Error report
+        Path outputDir = Paths.get(output).toAbsolutePath().getParent();
+        CsvWriter writerError = new CsvWriter(outputDir.resolve("error.csv").toString(), StandardCharsets.UTF_8);
+        String nl = System.lineSeparator();
+        long rows = 0;
+        try {
+            writerError.writeRow("行", "列数", "错误信息");
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + nl + "<XMLDATA>" + nl + "<MAIN>" + nl + "<SQLIST>" + nl);
+            Iterator<String[]> it = reader.iterator();
+            String[] headers = {};
+            int line = 1;
+            while (it.hasNext()) {
+                String[] nextLine = it.next();
+
+                if (line == 2) {
+                    headers = nextLine;
+                } else if (line > 2) {
+                    if (nextLine.length != headers.length) {
+                        writerError.writeRow(String.valueOf(line), String.valueOf(nextLine.length),
+                                "列数与表头(" + headers.length + "列)不一致");
+                    }
+                    XmlGenerator.writeRow(writer, headers, nextLine);
+                    rows++;
+                }
+                line++;
+            }
+            writer.flush();
+            out.write("</SQLIST>" + nl + "</MAIN>" + nl + "</XMLDATA>" + nl);
+        } finally {
+            reader.close();
+            out.close();
+            writerError.close();
+        }
+        return rows;
+    }
+
+    private static String cleanStr(String[] strs, int num, boolean required) {
+        String str = strs[num];
+        if (required && (str == null || str.equals(NULL) || str.trim().equals(""))) {
+            throw new RuntimeException("第" + num + "列！必填字段不能为空！");
+        }
+        if (str != null && str.equals(NULL)) {
+            return "";
+        } else {
+            return str.trim();//TODO consider if need remove start space
+        }
+    }
+
+    private static String cleanStr(String[] strs, int num, boolean required, String[] matches) {
+        String str = cleanStr(strs, num, required);
+        int responseNum = -1;
+        for (int i = 0; i < matches.length; i++) {
+            if (str.equals(matches[i])) {
+                responseNum = i + 1;
+                break;
+            }
+        }
+        if (responseNum > -1) {
+            return String.valueOf(responseNum);
+        } else {
+            throw new RuntimeException("第" + num + "列！输入的值[" + str + "]不正确，应该为(" + Arrays.toString(matches) + ")中的一种!");
+        }
+    }
+}
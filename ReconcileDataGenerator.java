@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthetic inputs for {@link ReconcilerService}, shaped like the real DB2 extract and Excel sheet.
+ * <p>
+ * The DB2 side has a key column {@code ID} and {@code columns - 1} value columns, every third one an Integer as a
+ * JDBC driver would return it. The Excel side repeats the DB2 columns as strings plus the Excel-only columns.
+ * {@code changeRate} of the matched keys get one shared column altered, {@code dbOnlyRate} of the DB2 keys are missing
+ * from Excel, {@code newRate * rows} Excel keys are missing from DB2, and {@code keySkew} of the DB2 rows reuse one of
+ * a small set of hot keys, which gives duplicate keys and uneven partitions.
+ */
+public class ReconcileDataGenerator {
+
+    public static final String KEY_COLUMN = "ID";
+
+    private int rows = 100_000;
+    private int columns = 20;
+    private double excelOnlyShare = 0.25;
+    private double changeRate = 0.01;
+    private double dbOnlyRate = 0.05;
+    private double newRate = 0.05;
+    private double keySkew;
+    private long seed = 42;
+
+    private List<Map<String, Object>> db2Rows;
+    private Map<String, Map<String, String>> excelByKey;
+    private Set<String> excelColumns;
+
+    public ReconcileDataGenerator rows(int rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    public ReconcileDataGenerator columns(int columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    public ReconcileDataGenerator excelOnlyShare(double excelOnlyShare) {
+        this.excelOnlyShare = excelOnlyShare;
+        return this;
+    }
+
+    public ReconcileDataGenerator changeRate(double changeRate) {
+        this.changeRate = changeRate;
+        return this;
+    }
+
+    public ReconcileDataGenerator dbOnlyRate(double dbOnlyRate) {
+        this.dbOnlyRate = dbOnlyRate;
+        return this;
+    }
+
+    public ReconcileDataGenerator newRate(double newRate) {
+        this.newRate = newRate;
+        return this;
+    }
+
+    public ReconcileDataGenerator keySkew(double keySkew) {
+        this.keySkew = keySkew;
+        return this;
+    }
+
+    public ReconcileDataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public ReconcileDataGenerator generate() {
+        Random random = new Random(seed);
+        List<String> dbColumns = new ArrayList<>();
+        dbColumns.add(KEY_COLUMN);
+        for (int c = 1; c < columns; c++) {
+            dbColumns.add("C" + c);
+        }
+        List<String> excelOnly = new ArrayList<>();
+        for (int c = 1; c <= Math.round(columns * excelOnlyShare); c++) {
+            excelOnly.add("X" + c);
+        }
+        excelColumns = new LinkedHashSet<>(dbColumns);
+        excelColumns.addAll(excelOnly);
+
+        int hotKeys = Math.max(1, rows / 100);
+        db2Rows = new ArrayList<>(rows);
+        Map<String, Map<String, Object>> lastRowByKey = new HashMap<>();
+        for (int i = 0; i < rows; i++) {
+            String key = random.nextDouble() < keySkew ? "K" + random.nextInt(hotKeys) : "K" + i;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(KEY_COLUMN, key);
+            for (int c = 1; c < columns; c++) {
+                row.put(dbColumns.get(c), c % 3 == 0 ? (Object) (i * 31 + c) : "v" + i + "_" + c);
+            }
+            db2Rows.add(row);
+            lastRowByKey.put(key, row);
+        }
+
+        excelByKey = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> e : lastRowByKey.entrySet()) {
+            if (random.nextDouble() < dbOnlyRate) {
+                continue;
+            }
+            Map<String, String> excelRow = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> v : e.getValue().entrySet()) {
+                excelRow.put(v.getKey(), String.valueOf(v.getValue()));
+            }
+            if (columns > 1 && random.nextDouble() < changeRate) {
+                excelRow.put(dbColumns.get(1 + random.nextInt(columns - 1)), "changed");
+            }
+            for (String x : excelOnly) {
+                excelRow.put(x, x + "_" + e.getKey());
+            }
+            excelByKey.put(e.getKey(), excelRow);
+        }
+        for (int i = 0; i < rows * newRate; i++) {
+            Map<String, String> excelRow = new LinkedHashMap<>();
+            for (String c : excelColumns) {
+                excelRow.put(c, "n" + i + "_" + c);
+            }
+            excelRow.put(KEY_COLUMN, "N" + i);
+            excelByKey.put("N" + i, excelRow);
+        }
+        return this;
+    }
+
+    public List<Map<String, Object>> getDb2Rows() {
+        return db2Rows;
+    }
+
+    public Map<String, Map<String, String>> getExcelByKey() {
+        return excelByKey;
+    }
+
+    public Set<String> getExcelColumns() {
+        return excelColumns;
+    }
+}
@@ -0,0 +1,130 @@
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes reconcile rows to an .xlsx with a streaming {@link SXSSFWorkbook}.
+ * <p>
+ * Only {@link #WINDOW} rows are kept in memory, older rows are flushed to a compressed temp file, so heap use does not
+ * grow with the row count. Cells of the columns named in {@code ChangedColumns} get the highlight style; all styles
+ * are created once up front, as every cell style is a workbook-wide object. A sheet holds at most
+ * {@link #MAX_ROWS_PER_SHEET} data rows, larger outputs continue on {@code output2}, {@code output3}, ...
+ * <p>
+ * Can be used as the {@link ReconcileSink} of {@link ReconcilerService#reconcileStreaming} or with
+ * {@link #export(ReconcileResult, Path)}.
+ */
+public class ReconcileExcelExporter implements ReconcileSink {
+
+    static final int WINDOW = 100;
+    // Excel limit of 1,048,576 rows, minus the header
+    static final int MAX_ROWS_PER_SHEET = 1_048_575;
+    private static final int COLUMN_WIDTH = 18 * 256;
+
+    private final Path outputPath;
+    private SXSSFWorkbook wb;
+    private CellStyle headerStyle;
+    private CellStyle changedStyle;
+    private List<String> headers;
+    private Map<String, Integer> columnIndex;
+    private int changedIndex;
+    private Sheet sheet;
+    private int sheetCount;
+    private int rowNum;
+
+    public ReconcileExcelExporter(Path outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    public static void export(ReconcileResult result, Path outputPath) throws IOException {
+        ReconcileExcelExporter exporter = new ReconcileExcelExporter(outputPath);
+        exporter.begin(result.getColumnsOrdered());
+        for (String[] row : result.getRowArrays()) {
+            exporter.row(row);
+        }
+        exporter.end();
+    }
+
+    // setFillPattern(short) is deprecated from poi 3.15, but poi-ooxml 3.14 has no FillPatternType overload yet
+    @Override
+    @SuppressWarnings("deprecation")
+    public void begin(List<String> columns) {
+        wb = new SXSSFWorkbook(WINDOW);
+        wb.setCompressTempFiles(true);
+
+        headerStyle = wb.createCellStyle();
+        Font bold = wb.createFont();
+        bold.setBold(true);
+        headerStyle.setFont(bold);
+
+        changedStyle = wb.createCellStyle();
+        changedStyle.setFillForegroundColor(IndexedColors.LIGHT_YELLOW.getIndex());
+        changedStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
+
+        headers = columns;
+        columnIndex = new HashMap<>();
+        for (int i = columns.size() - 1; i >= 0; i--) {
+            columnIndex.put(columns.get(i), i);
+        }
+        Integer changed = columnIndex.get(ReconcileSchema.CHANGED_COLS);
+        changedIndex = changed == null ? -1 : changed;
+        newSheet();
+    }
+
+    @Override
+    public void row(String[] values) {
+        if (rowNum > MAX_ROWS_PER_SHEET) {
+            newSheet();
+        }
+        Row row = sheet.createRow(rowNum++);
+        for (int c = 0; c < values.length; c++) {
+            row.createCell(c).setCellValue(values[c] == null ? "" : values[c]);
+        }
+        String changedCols = changedIndex >= 0 && changedIndex < values.length ? values[changedIndex] : null;
+        if (changedCols != null && !changedCols.isEmpty()) {
+            for (String column : changedCols.split(",")) {
+                Integer c = columnIndex.get(column);
+                if (c != null && c < values.length) {
+                    row.getCell(c).setCellStyle(changedStyle);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        try (OutputStream out = Files.newOutputStream(outputPath)) {
+            wb.write(out);
+        } finally {
+            // Deletes the temp files of the flushed rows
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private void newSheet() {
+        sheetCount++;
+        sheet = wb.createSheet(sheetCount == 1 ? "output" : "output" + sheetCount);
+        Row headerRow = sheet.createRow(0);
+        for (int i = 0; i < headers.size(); i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(headers.get(i));
+            cell.setCellStyle(headerStyle);
+            // autoSizeColumn would need every row in memory, use a fixed width instead
+            sheet.setColumnWidth(i, COLUMN_WIDTH);
+        }
+        sheet.createFreezePane(0, 1);
+        rowNum = 1;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Hook for the timers and counters of {@link ReconcilerService}.
+ * <p>
+ * Kept free of any metrics library; a Micrometer binding is a few lines, e.g.
+ * <pre>
+ * public void recordPhase(String operation, String phase, long nanos) {
+ *     registry.timer("reconcile.phase", "operation", operation, "phase", phase).record(nanos, TimeUnit.NANOSECONDS);
+ * }
+ * public void countRows(String operation, String status, long rows) {
+ *     registry.counter("reconcile.rows", "operation", operation, "status", status).increment(rows);
+ * }
+ * </pre>
+ * Both methods are called a handful of times per reconcile, never per row.
+ */
+public interface ReconcileMetrics {
+
+    ReconcileMetrics NONE = new ReconcileMetrics() {
+        @Override
+        public void recordPhase(String operation, String phase, long nanos) {
+        }
+
+        @Override
+        public void countRows(String operation, String status, long rows) {
+        }
+    };
+
+    /**
+     * @param operation {@code reconcile}, {@code parallel}, {@code incremental} or {@code streaming}
+     * @param phase     e.g. {@code schema}, {@code dbRows}, {@code newRows}
+     */
+    void recordPhase(String operation, String phase, long nanos);
+
+    /**
+     * @param status {@code MATCHED}, {@code CHANGED}, {@code DB_ONLY}, {@code NEW}, or {@code SKIPPED} for rows an
+     *               incremental reconcile left out
+     */
+    void countRows(String operation, String status, long rows);
+}
@@ -0,0 +1,145 @@
+import shujiaw.CsvWriter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Output of {@link ReconcilerService#reconcile}: one {@code String[]} per row, laid out by a shared
+ * {@link ReconcileSchema}.
+ */
+public class ReconcileResult {
+
+    private final ReconcileSchema schema;
+    private final List<String[]> rows;
+    private final long skippedRowCount;
+
+    public ReconcileResult(ReconcileSchema schema, List<String[]> rows) {
+        this(schema, rows, 0);
+    }
+
+    public ReconcileResult(ReconcileSchema schema, List<String[]> rows, long skippedRowCount) {
+        this.schema = schema;
+        this.rows = rows;
+        this.skippedRowCount = skippedRowCount;
+    }
+
+    /**
+     * @return rows left out of an incremental reconcile because neither side changed since the previous run
+     */
+    public long getSkippedRowCount() {
+        return skippedRowCount;
+    }
+
+    public ReconcileSchema getSchema() {
+        return schema;
+    }
+
+    public List<String> getColumnsOrdered() {
+        return schema.getColumns();
+    }
+
+    /**
+     * @return the rows, values in {@link #getColumnsOrdered()} order
+     */
+    public List<String[]> getRowArrays() {
+        return rows;
+    }
+
+    /**
+     * Read-only map view of the rows for callers that look values up by column name. The maps are created on access
+     * and are backed by the arrays, no values are copied.
+     */
+    public List<Map<String, String>> getRows() {
+        return new AbstractList<Map<String, String>>() {
+            @Override
+            public Map<String, String> get(int index) {
+                return new RowMap(schema, rows.get(index));
+            }
+
+            @Override
+            public int size() {
+                return rows.size();
+            }
+        };
+    }
+
+    /**
+     * Writes the columns as header line and every row in column order.
+     */
+    public void writeCsv(String fileName, Charset charset) throws IOException {
+        CsvWriter writer = new CsvWriter(fileName, charset);
+        try {
+            writer.writeRow(schema.getColumns());
+            for (String[] row : rows) {
+                writer.writeRow(row);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class RowMap extends AbstractMap<String, String> {
+        private final ReconcileSchema schema;
+        private final String[] values;
+
+        RowMap(ReconcileSchema schema, String[] values) {
+            this.schema = schema;
+            this.values = values;
+        }
+
+        @Override
+        public String get(Object key) {
+            int i = key instanceof String ? schema.indexOf((String) key) : -1;
+            return i < 0 ? null : values[i];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && schema.indexOf((String) key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < values.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (i >= values.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int column = i++;
+                            return new SimpleImmutableEntry<>(schema.getColumns().get(column), values[column]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return values.length;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scale harness for {@link ReconcilerService} on {@link ReconcileDataGenerator} data.
+ * <pre>
+ * ReconcileScaleHarness [-rows 100000,1000000] [-columns 20] [-excelOnly 0.25] [-change 0.01] [-skew 0]
+ *                       [-mode reconcile|parallel|incremental] [-warmup 2] [-iterations 3]
+ * </pre>
+ * For every row count it prints throughput, peak heap and bytes allocated per output row, averaged over the measured
+ * iterations, followed by the phase times and status counts the service reported through {@link ReconcileMetrics}.
+ * In incremental mode the warmup run writes the digest file, so the measured runs show the unchanged-data case.
+ * Run with a fixed heap ({@code -Xms}/{@code -Xmx}) so peak heap numbers are comparable between runs.
+ */
+public class ReconcileScaleHarness {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = Arrays.asList(args);
+        String mode = option(options, "-mode", "reconcile");
+        int warmup = Integer.parseInt(option(options, "-warmup", "2"));
+        int iterations = Integer.parseInt(option(options, "-iterations", "3"));
+
+        System.out.printf("%-12s %10s %8s %12s %12s %14s %12s%n", "mode", "rows", "columns", "ms", "rows/s",
+                "peak heap MB", "bytes/row");
+        for (String rowCount : option(options, "-rows", "100000,1000000").split(",")) {
+            ReconcileDataGenerator data = new ReconcileDataGenerator()
+                    .rows(Integer.parseInt(rowCount.trim()))
+                    .columns(Integer.parseInt(option(options, "-columns", "20")))
+                    .excelOnlyShare(Double.parseDouble(option(options, "-excelOnly", "0.25")))
+                    .changeRate(Double.parseDouble(option(options, "-change", "0.01")))
+                    .keySkew(Double.parseDouble(option(options, "-skew", "0")))
+                    .generate();
+
+            CollectingMetrics metrics = new CollectingMetrics();
+            ReconcilerService service = new ReconcilerService();
+            Path digestFile = Files.createTempFile("reconcile-digests", ".bin");
+            try {
+                for (int i = 0; i < warmup; i++) {
+                    run(service, mode, data, digestFile);
+                }
+                service.setMetrics(metrics);
+                long nanos = 0;
+                long allocated = 0;
+                long peak = 0;
+                long outputRows = 0;
+                for (int i = 0; i < iterations; i++) {
+                    System.gc();
+                    resetPeakHeap();
+                    long allocatedBefore = allocatedBytes();
+                    long start = System.nanoTime();
+                    ReconcileResult result = run(service, mode, data, digestFile);
+                    nanos += System.nanoTime() - start;
+                    allocated += allocatedBytes() - allocatedBefore;
+                    peak = Math.max(peak, peakHeap());
+                    outputRows += result.getRowArrays().size() + result.getSkippedRowCount();
+                }
+                double seconds = nanos / 1e9;
+                System.out.printf("%-12s %10s %8d %12.0f %12.0f %14.1f %12.0f%n", mode, rowCount,
+                        data.getExcelColumns().size(), nanos / 1e6 / iterations, outputRows / seconds,
+                        peak / (1024.0 * 1024), outputRows == 0 ? 0.0 : (double) allocated / outputRows);
+                metrics.print(iterations);
+            } finally {
+                Files.deleteIfExists(digestFile);
+            }
+        }
+    }
+
+    private static ReconcileResult run(ReconcilerService service, String mode, ReconcileDataGenerator data,
+                                       Path digestFile) throws Exception {
+        switch (mode) {
+            case "parallel":
+                return service.reconcileParallel(data.getDb2Rows(), data.getExcelByKey(), data.getExcelColumns(),
+                        ReconcileDataGenerator.KEY_COLUMN);
+            case "incremental":
+                return service.reconcileIncremental(data.getDb2Rows(), data.getExcelByKey(), data.getExcelColumns(),
+                        ReconcileDataGenerator.KEY_COLUMN, digestFile);
+            default:
+                return service.reconcile(data.getDb2Rows(), data.getExcelByKey(), data.getExcelColumns(),
+                        ReconcileDataGenerator.KEY_COLUMN);
+        }
+    }
+
+    // Sums over all threads, so the fork-join workers of the parallel mode are included
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        long sum = 0;
+        for (long allocated : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                sum += allocated;
+            }
+        }
+        return sum;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long sum = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                sum += pool.getPeakUsage().getUsed();
+            }
+        }
+        return sum;
+    }
+
+    private static String option(List<String> options, String name, String defaultValue) {
+        int index = options.indexOf(name);
+        return index >= 0 && index + 1 < options.size() ? options.get(index + 1) : defaultValue;
+    }
+
+    private static class CollectingMetrics implements ReconcileMetrics {
+        private final Map<String, LongAdder> phases = new TreeMap<>();
+        private final Map<String, LongAdder> statuses = new TreeMap<>();
+
+        @Override
+        public synchronized void recordPhase(String operation, String phase, long nanos) {
+            phases.computeIfAbsent(operation + "." + phase, k -> new LongAdder()).add(nanos);
+        }
+
+        @Override
+        public synchronized void countRows(String operation, String status, long rows) {
+            statuses.computeIfAbsent(status, k -> new LongAdder()).add(rows);
+        }
+
+        synchronized void print(int iterations) {
+            StringBuilder sb = new StringBuilder("    ");
+            for (Map.Entry<String, LongAdder> e : phases.entrySet()) {
+                sb.append(String.format("%s=%.1fms ", e.getKey(), e.getValue().sum() / 1e6 / iterations));
+            }
+            for (Map.Entry<String, LongAdder> e : statuses.entrySet()) {
+                sb.append(e.getKey()).append('=').append(e.getValue().sum() / iterations).append(' ');
+            }
+            System.out.println(sb.toString().trim().isEmpty() ? "" : sb);
+            phases.clear();
+            statuses.clear();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column layout of a reconcile output, shared by all of its {@code String[]} rows.
+ * <p>
+ * Columns are the DB2 columns, then the Excel-only columns, then {@link #STATUS_COL} and {@link #CHANGED_COLS}
+ * unless a source already has them. Positions of the Excel-only and shared columns are resolved once here so the
+ * per-row loops only index arrays.
+ */
+public class ReconcileSchema {
+
+    public static final String STATUS_COL = "MatchStatus";
+    public static final String CHANGED_COLS = "ChangedColumns";
+
+    private final List<String> columns;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final int dbColumnCount;
+
+    // Excel-only column i is read from Excel column excelOnlySource[i] (or by name) into excelOnlyTarget[i]
+    final String[] excelOnlyNames;
+    final int[] excelOnlySource;
+    final int[] excelOnlyTarget;
+    // Shared column i is DB2 column sharedTarget[i] and Excel column sharedSource[i] (or by name)
+    final String[] sharedNames;
+    final int[] sharedSource;
+    final int[] sharedTarget;
+    // and compared with sharedComparators[i], TEXT until set
+    final ColumnComparator[] sharedComparators;
+    final int statusIndex;
+    final int changedIndex;
+
+    /**
+     * @param excelColumns Excel header; positions in this list are the Excel source indexes
+     */
+    public ReconcileSchema(List<String> dbColumns, Collection<String> excelColumns) {
+        List<String> excel = new ArrayList<>(new LinkedHashSet<>(excelColumns));
+        LinkedHashSet<String> excelOnly = new LinkedHashSet<>(excel);
+        excelOnly.removeAll(dbColumns);
+
+        List<String> columnsOrdered = new ArrayList<>(dbColumns);
+        columnsOrdered.addAll(excelOnly);
+        if (!columnsOrdered.contains(STATUS_COL)) columnsOrdered.add(STATUS_COL);
+        if (!columnsOrdered.contains(CHANGED_COLS)) columnsOrdered.add(CHANGED_COLS);
+        this.columns = Collections.unmodifiableList(columnsOrdered);
+        for (int i = columnsOrdered.size() - 1; i >= 0; i--) {
+            index.put(columnsOrdered.get(i), i);
+        }
+        this.dbColumnCount = dbColumns.size();
+
+        excelOnlyNames = excelOnly.toArray(new String[0]);
+        excelOnlySource = new int[excelOnlyNames.length];
+        excelOnlyTarget = new int[excelOnlyNames.length];
+        for (int i = 0; i < excelOnlyNames.length; i++) {
+            excelOnlySource[i] = excel.indexOf(excelOnlyNames[i]);
+            excelOnlyTarget[i] = index.get(excelOnlyNames[i]);
+        }
+
+        List<Integer> shared = new ArrayList<>();
+        for (int i = 0; i < dbColumns.size(); i++) {
+            if (excel.contains(dbColumns.get(i))) {
+                shared.add(i);
+            }
+        }
+        sharedNames = new String[shared.size()];
+        sharedSource = new int[shared.size()];
+        sharedTarget = new int[shared.size()];
+        for (int i = 0; i < sharedNames.length; i++) {
+            sharedTarget[i] = shared.get(i);
+            sharedNames[i] = dbColumns.get(sharedTarget[i]);
+            sharedSource[i] = excel.indexOf(sharedNames[i]);
+        }
+        sharedComparators = new ColumnComparator[sharedNames.length];
+        Arrays.fill(sharedComparators, ColumnComparator.TEXT);
+        statusIndex = index.get(STATUS_COL);
+        changedIndex = index.get(CHANGED_COLS);
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public int getDbColumnCount() {
+        return dbColumnCount;
+    }
+
+    /**
+     * Sets how the shared column {@code column} is compared; columns that are not shared are ignored.
+     */
+    void setComparator(String column, ColumnComparator comparator) {
+        for (int i = 0; i < sharedNames.length; i++) {
+            if (sharedNames[i].equals(column)) {
+                sharedComparators[i] = comparator;
+            }
+        }
+    }
+
+    /**
+     * @return the first position of {@code column}, or -1
+     */
+    public int indexOf(String column) {
+        Integer i = index.get(column);
+        return i == null ? -1 : i;
+    }
+}
@@ -0,0 +1,20 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the rows of a streaming reconcile one at a time, so nothing is kept in memory.
+ */
+public interface ReconcileSink {
+
+    /**
+     * Called once before the first row with the output columns, the last two are the status columns.
+     */
+    void begin(List<String> columns) throws IOException;
+
+    /**
+     * @param values one value per column, never null; the array is not reused after the call returns
+     */
+    void row(String[] values) throws IOException;
+
+    void end() throws IOException;
+}
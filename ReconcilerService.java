@@ -1,104 +1,643 @@
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 @Service
 public class ReconcilerService {
 
+    // Excel rows kept in memory by the streaming reconcile before a sorted run is spilled to disk
+    private static final int SORT_BUFFER_ROWS = 200_000;
+    private static final int FETCH_SIZE = 1000;
+    private static final String[] STATUSES = {"MATCHED", "CHANGED", "DB_ONLY", "NEW"};
+
+    private ReconcileMetrics metrics = ReconcileMetrics.NONE;
+    private Map<String, ColumnComparator> columnComparators = Collections.emptyMap();
+
+    public void setMetrics(ReconcileMetrics metrics) {
+        this.metrics = metrics == null ? ReconcileMetrics.NONE : metrics;
+    }
+
+    /**
+     * How shared columns are compared, by column name. Columns not listed get a comparator for their JDBC type in
+     * {@link #reconcileStreaming}, or for the Java type of their first non-null DB2 value otherwise.
+     */
+    public void setColumnComparators(Map<String, ColumnComparator> columnComparators) {
+        this.columnComparators = columnComparators == null
+                ? Collections.<String, ColumnComparator>emptyMap() : new HashMap<>(columnComparators);
+    }
+
     public ReconcileResult reconcile(List<Map<String, Object>> db2Rows,
                                      Map<String, Map<String, String>> excelByKey,
                                      Set<String> excelAllColumns,
                                      String keyColumn) {
 
-        LinkedHashSet<String> dbColumns = new LinkedHashSet<>();
+        long start = System.nanoTime();
+        List<String> dbColumns = new ArrayList<>();
         if (!db2Rows.isEmpty()) {
             dbColumns.addAll(db2Rows.get(0).keySet());
         }
+        ReconcileSchema schema = new ReconcileSchema(dbColumns, excelAllColumns);
+        chooseComparators(schema, db2Rows);
+        String[] dbNames = dbColumns.toArray(new String[0]);
+        int dbKeyIndex = dbColumns.indexOf(keyColumn);
 
-        LinkedHashSet<String> excelOnlyColumns = new LinkedHashSet<>(excelAllColumns);
-        excelOnlyColumns.removeAll(dbColumns);
-
-        List<String> columnsOrdered = new ArrayList<>(dbColumns);
-        columnsOrdered.addAll(excelOnlyColumns);
-
-        final String STATUS_COL = "MatchStatus";
-        final String CHANGED_COLS = "ChangedColumns";
-        if (!columnsOrdered.contains(STATUS_COL)) columnsOrdered.add(STATUS_COL);
-        if (!columnsOrdered.contains(CHANGED_COLS)) columnsOrdered.add(CHANGED_COLS);
-
-        Set<String> dbKeys = new LinkedHashSet<>();
+        Set<String> dbKeys = new HashSet<>();
         for (Map<String, Object> row : db2Rows) {
             Object keyObj = row.get(keyColumn);
             if (keyObj != null) dbKeys.add(String.valueOf(keyObj));
         }
+        start = phase("reconcile", "keys", start);
 
-        List<Map<String, String>> outputRows = new ArrayList<>();
+        List<String[]> outputRows = new ArrayList<>(db2Rows.size());
 
         // 1) DB2 rows
         for (Map<String, Object> dbRow : db2Rows) {
-            String keyVal = dbRow.get(keyColumn) == null ? "" : String.valueOf(dbRow.get(keyColumn));
-            Map<String, String> out = new LinkedHashMap<>();
+            outputRows.add(reconcileDbRow(schema, dbNames, dbKeyIndex, keyColumn, dbRow, excelByKey));
+        }
+        start = phase("reconcile", "dbRows", start);
 
-            // baseline from DB2
-            for (String c : dbColumns) {
-                Object v = dbRow.get(c);
-                out.put(c, v == null ? "" : String.valueOf(v));
+        // 2) Excel NEW rows
+        for (Map.Entry<String, Map<String, String>> e : excelByKey.entrySet()) {
+            if (!dbKeys.contains(e.getKey())) {
+                outputRows.add(newRow(schema, e.getValue(), dbKeyIndex, e.getKey()));
             }
+        }
+        phase("reconcile", "newRows", start);
 
-            Map<String, String> excelRow = excelByKey.get(keyVal);
-            if (excelRow != null) {
-                // Add Excel-only columns
-                for (String c : excelOnlyColumns) {
-                    out.put(c, excelRow.getOrDefault(c, ""));
-                }
+        countStatuses("reconcile", schema, outputRows);
+        return new ReconcileResult(schema, outputRows);
+    }
+
+    /**
+     * {@link #reconcileParallel(List, Map, Set, String, ForkJoinPool, int)} on the common pool, with a few partitions
+     * per core so that one heavy partition does not leave the other cores idle.
+     */
+    public ReconcileResult reconcileParallel(List<Map<String, Object>> db2Rows,
+                                             Map<String, Map<String, String>> excelByKey,
+                                             Set<String> excelAllColumns,
+                                             String keyColumn) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return reconcileParallel(db2Rows, excelByKey, excelAllColumns, keyColumn, pool, pool.getParallelism() * 4);
+    }
 
-                // Check for differences in shared columns
-                List<String> changedCols = new ArrayList<>();
-                for (String c : dbColumns) {
-                    if (excelRow.containsKey(c)) {
-                        String dbVal = out.get(c) == null ? "" : out.get(c).trim();
-                        String exVal = excelRow.getOrDefault(c, "").trim();
-                        if (!dbVal.equals(exVal)) {
-                            changedCols.add(c);
+    /**
+     * Parallel variant of {@link #reconcile} with the same output, row for row.
+     * <p>
+     * Every key is reconciled on its own, so DB2 rows and Excel entries are hash-partitioned by key into
+     * {@code partitions} groups and the groups run on {@code pool}. A partition sees all rows of its keys, which is
+     * enough to decide MATCHED/CHANGED/DB_ONLY and NEW locally. Each result is stored at the position of its source
+     * row, so the output is still the DB2 rows in their order followed by the NEW rows in Excel order.
+     */
+    public ReconcileResult reconcileParallel(List<Map<String, Object>> db2Rows,
+                                             Map<String, Map<String, String>> excelByKey,
+                                             Set<String> excelAllColumns,
+                                             String keyColumn,
+                                             ForkJoinPool pool,
+                                             int partitions) {
+
+        long start = System.nanoTime();
+        List<String> dbColumns = new ArrayList<>();
+        if (!db2Rows.isEmpty()) {
+            dbColumns.addAll(db2Rows.get(0).keySet());
+        }
+        ReconcileSchema schema = new ReconcileSchema(dbColumns, excelAllColumns);
+        chooseComparators(schema, db2Rows);
+        String[] dbNames = dbColumns.toArray(new String[0]);
+        int dbKeyIndex = dbColumns.indexOf(keyColumn);
+
+        // Partition by key; DB2 rows by list position, Excel entries by iteration order
+        Partition[] parts = new Partition[partitions];
+        for (int p = 0; p < partitions; p++) {
+            parts[p] = new Partition();
+        }
+        for (int i = 0; i < db2Rows.size(); i++) {
+            Object keyObj = db2Rows.get(i).get(keyColumn);
+            parts[partition(keyObj == null ? "" : String.valueOf(keyObj), partitions)].addDbRow(i);
+        }
+        List<Map.Entry<String, Map<String, String>>> excelEntries = new ArrayList<>(excelByKey.entrySet());
+        for (int i = 0; i < excelEntries.size(); i++) {
+            parts[partition(excelEntries.get(i).getKey(), partitions)].addExcelEntry(i);
+        }
+
+        start = phase("parallel", "partition", start);
+
+        String[][] dbOut = new String[db2Rows.size()][];
+        String[][] newOut = new String[excelEntries.size()][];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<RecursiveAction> tasks = new ArrayList<>(partitions);
+                for (Partition part : parts) {
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            Set<String> dbKeys = new HashSet<>();
+                            for (int n = 0; n < part.dbCount; n++) {
+                                int i = part.dbRows[n];
+                                Map<String, Object> dbRow = db2Rows.get(i);
+                                Object keyObj = dbRow.get(keyColumn);
+                                if (keyObj != null) dbKeys.add(String.valueOf(keyObj));
+                                dbOut[i] = reconcileDbRow(schema, dbNames, dbKeyIndex, keyColumn, dbRow, excelByKey);
+                            }
+                            for (int n = 0; n < part.excelCount; n++) {
+                                int i = part.excelEntries[n];
+                                Map.Entry<String, Map<String, String>> e = excelEntries.get(i);
+                                if (!dbKeys.contains(e.getKey())) {
+                                    newOut[i] = newRow(schema, e.getValue(), dbKeyIndex, e.getKey());
+                                }
+                            }
                         }
-                    }
+                    });
                 }
+                invokeAll(tasks);
+            }
+        });
+        start = phase("parallel", "reconcile", start);
+
+        List<String[]> outputRows = new ArrayList<>(dbOut.length + newOut.length);
+        outputRows.addAll(Arrays.asList(dbOut));
+        for (String[] row : newOut) {
+            if (row != null) {
+                outputRows.add(row);
+            }
+        }
+        phase("parallel", "merge", start);
 
-                if (!changedCols.isEmpty()) {
-                    out.put(STATUS_COL, "CHANGED");
-                    out.put(CHANGED_COLS, String.join(",", changedCols));
+        countStatuses("parallel", schema, outputRows);
+        return new ReconcileResult(schema, outputRows);
+    }
+
+    /**
+     * Incremental variant of {@link #reconcile}: only keys whose DB2 or Excel rows changed since the previous run are
+     * reconciled and returned.
+     * <p>
+     * Every key gets a digest of its DB2 rows (all columns, in order) and one of its Excel row. A key whose digests
+     * equal those stored in {@code digestFile} by the previous run has the same output as then and is skipped. The
+     * file is rewritten with the digests of this run. Changed rows keep the order {@link #reconcile} would give them;
+     * keys that disappeared since the previous run are only dropped from the file.
+     */
+    public ReconcileResult reconcileIncremental(List<Map<String, Object>> db2Rows,
+                                                Map<String, Map<String, String>> excelByKey,
+                                                Set<String> excelAllColumns,
+                                                String keyColumn,
+                                                Path digestFile) throws IOException {
+
+        long start = System.nanoTime();
+        List<String> dbColumns = new ArrayList<>();
+        if (!db2Rows.isEmpty()) {
+            dbColumns.addAll(db2Rows.get(0).keySet());
+        }
+        ReconcileSchema schema = new ReconcileSchema(dbColumns, excelAllColumns);
+        chooseComparators(schema, db2Rows);
+        String[] dbNames = dbColumns.toArray(new String[0]);
+        int dbKeyIndex = dbColumns.indexOf(keyColumn);
+
+        long layout = RowDigest.exact(RowDigest.EMPTY, keyColumn);
+        for (String column : schema.getColumns()) {
+            layout = RowDigest.exact(layout, column);
+        }
+        // A shared column compared another way may turn a stored verdict around
+        for (ColumnComparator comparator : schema.sharedComparators) {
+            layout = RowDigest.exact(layout, comparator.toString());
+        }
+        RowDigestStore previous = RowDigestStore.load(digestFile, layout);
+        RowDigestStore current = new RowDigestStore(layout);
+
+        // Digest of all DB2 rows of a key, in list order
+        Map<String, Long> dbDigests = new HashMap<>();
+        Set<String> dbKeys = new HashSet<>();
+        for (Map<String, Object> dbRow : db2Rows) {
+            Object keyObj = dbRow.get(keyColumn);
+            String keyVal = keyObj == null ? "" : String.valueOf(keyObj);
+            if (keyObj != null) dbKeys.add(keyVal);
+            long digest = RowDigest.EMPTY;
+            for (String c : dbNames) {
+                Object v = dbRow.get(c);
+                digest = RowDigest.exact(digest, v == null ? null : String.valueOf(v));
+            }
+            Long before = dbDigests.get(keyVal);
+            dbDigests.put(keyVal, before == null ? digest : RowDigest.combine(before, digest));
+        }
+        List<String> excelColumns = new ArrayList<>(new LinkedHashSet<>(excelAllColumns));
+        Map<String, Long> excelDigests = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> e : excelByKey.entrySet()) {
+            long digest = RowDigest.EMPTY;
+            for (String c : excelColumns) {
+                digest = RowDigest.exact(digest, e.getValue().get(c));
+            }
+            excelDigests.put(e.getKey(), digest);
+        }
+
+        start = phase("incremental", "digest", start);
+
+        Set<String> changedKeys = new HashSet<>();
+        for (Map.Entry<String, Long> e : dbDigests.entrySet()) {
+            Long excelDigest = excelDigests.get(e.getKey());
+            recordDigests(e.getKey(), e.getValue(), excelDigest == null ? 0 : excelDigest, previous, current, changedKeys);
+        }
+        for (Map.Entry<String, Long> e : excelDigests.entrySet()) {
+            if (!dbDigests.containsKey(e.getKey())) {
+                recordDigests(e.getKey(), 0, e.getValue(), previous, current, changedKeys);
+            }
+        }
+
+        List<String[]> outputRows = new ArrayList<>();
+        long skipped = 0;
+        for (Map<String, Object> dbRow : db2Rows) {
+            Object keyObj = dbRow.get(keyColumn);
+            if (changedKeys.contains(keyObj == null ? "" : String.valueOf(keyObj))) {
+                outputRows.add(reconcileDbRow(schema, dbNames, dbKeyIndex, keyColumn, dbRow, excelByKey));
+            } else {
+                skipped++;
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : excelByKey.entrySet()) {
+            if (!dbKeys.contains(e.getKey())) {
+                if (changedKeys.contains(e.getKey())) {
+                    outputRows.add(newRow(schema, e.getValue(), dbKeyIndex, e.getKey()));
                 } else {
-                    out.put(STATUS_COL, "MATCHED");
-                    out.put(CHANGED_COLS, "");
+                    skipped++;
                 }
-            } else {
-                for (String c : excelOnlyColumns) {
-                    out.putIfAbsent(c, "");
+            }
+        }
+        start = phase("incremental", "reconcile", start);
+        current.save(digestFile);
+        phase("incremental", "save", start);
+
+        countStatuses("incremental", schema, outputRows);
+        metrics.countRows("incremental", "SKIPPED", skipped);
+        return new ReconcileResult(schema, outputRows, skipped);
+    }
+
+    private static void recordDigests(String key, long dbDigest, long excelDigest, RowDigestStore previous,
+                                      RowDigestStore current, Set<String> changedKeys) {
+        long[] before = previous.get(key);
+        if (before == null || before[0] != dbDigest || before[1] != excelDigest) {
+            changedKeys.add(key);
+        }
+        current.put(key, dbDigest, excelDigest);
+    }
+
+    private void chooseComparators(ReconcileSchema schema, List<Map<String, Object>> db2Rows) {
+        Set<String> pending = new HashSet<>(Arrays.asList(schema.sharedNames));
+        pending.removeAll(columnComparators.keySet());
+        for (Iterator<Map<String, Object>> rows = db2Rows.iterator(); rows.hasNext() && !pending.isEmpty(); ) {
+            Map<String, Object> row = rows.next();
+            for (Iterator<String> columns = pending.iterator(); columns.hasNext(); ) {
+                String column = columns.next();
+                Object v = row.get(column);
+                if (v != null) {
+                    schema.setComparator(column, ColumnComparator.forValue(v));
+                    columns.remove();
                 }
-                out.put(STATUS_COL, "DB_ONLY");
-                out.put(CHANGED_COLS, "");
             }
-            outputRows.add(out);
         }
+        for (Map.Entry<String, ColumnComparator> e : columnComparators.entrySet()) {
+            schema.setComparator(e.getKey(), e.getValue());
+        }
+    }
 
-        // 2) Excel NEW rows
-        for (Map.Entry<String, Map<String, String>> e : excelByKey.entrySet()) {
-            String key = e.getKey();
-            if (!dbKeys.contains(key)) {
-                Map<String, String> excelRow = e.getValue();
-                Map<String, String> out = new LinkedHashMap<>();
+    private void chooseComparators(ReconcileSchema schema, ResultSetMetaData meta) throws SQLException {
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            String column = meta.getColumnLabel(i);
+            ColumnComparator configured = columnComparators.get(column);
+            schema.setComparator(column, configured != null ? configured
+                    : ColumnComparator.forJdbcType(meta.getColumnType(i), meta.getScale(i)));
+        }
+    }
 
-                for (String c : dbColumns) {
-                    out.put(c, "");
+    private long phase(String operation, String phase, long start) {
+        long now = System.nanoTime();
+        metrics.recordPhase(operation, phase, now - start);
+        return now;
+    }
+
+    private void countStatuses(String operation, ReconcileSchema schema, List<String[]> rows) {
+        if (metrics == ReconcileMetrics.NONE) {
+            return;
+        }
+        long[] counts = new long[STATUSES.length];
+        for (String[] row : rows) {
+            counts[statusOrdinal(row[schema.statusIndex])]++;
+        }
+        for (int i = 0; i < STATUSES.length; i++) {
+            metrics.countRows(operation, STATUSES[i], counts[i]);
+        }
+    }
+
+    private static int statusOrdinal(String status) {
+        switch (status) {
+            case "MATCHED":
+                return 0;
+            case "CHANGED":
+                return 1;
+            case "DB_ONLY":
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static int partition(String key, int partitions) {
+        int h = key.hashCode();
+        // Spread the high bits, String hashes of similar keys differ mostly in the low bits
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % partitions;
+    }
+
+    private static String[] reconcileDbRow(ReconcileSchema schema, String[] dbNames, int dbKeyIndex, String keyColumn,
+                                           Map<String, Object> dbRow, Map<String, Map<String, String>> excelByKey) {
+        String[] out = new String[schema.size()];
+        // baseline from DB2
+        for (int i = 0; i < dbNames.length; i++) {
+            Object v = dbRow.get(dbNames[i]);
+            out[i] = v == null ? "" : String.valueOf(v);
+        }
+        String keyVal;
+        if (dbKeyIndex >= 0) {
+            keyVal = out[dbKeyIndex];
+        } else {
+            Object keyObj = dbRow.get(keyColumn);
+            keyVal = keyObj == null ? "" : String.valueOf(keyObj);
+        }
+
+        Map<String, String> excelRow = excelByKey.get(keyVal);
+        if (excelRow != null) {
+            // Add Excel-only columns
+            for (int i = 0; i < schema.excelOnlyNames.length; i++) {
+                out[schema.excelOnlyTarget[i]] = excelRow.getOrDefault(schema.excelOnlyNames[i], "");
+            }
+
+            // Check for differences in shared columns, column by column only when the digests differ
+            List<String> changedCols = null;
+            if (!sharedDigestsMatch(schema, out, excelRow)) {
+                for (int i = 0; i < schema.sharedNames.length; i++) {
+                    String exVal = excelRow.get(schema.sharedNames[i]);
+                    if (exVal == null && !excelRow.containsKey(schema.sharedNames[i])) {
+                        continue;
+                    }
+                    if (!schema.sharedComparators[i].equal(out[schema.sharedTarget[i]], exVal == null ? "" : exVal)) {
+                        if (changedCols == null) {
+                            changedCols = new ArrayList<>();
+                        }
+                        changedCols.add(schema.sharedNames[i]);
+                    }
+                }
+            }
+            out[schema.statusIndex] = changedCols == null ? "MATCHED" : "CHANGED";
+            out[schema.changedIndex] = changedCols == null ? "" : String.join(",", changedCols);
+        } else {
+            fillDbOnly(schema, out);
+        }
+        return out;
+    }
+
+    /**
+     * Compares the trimmed shared columns by digest. An Excel row without one of the shared columns never matches
+     * here, the column diff then skips that column as before.
+     */
+    private static boolean sharedDigestsMatch(ReconcileSchema schema, String[] out, Map<String, String> excelRow) {
+        long dbDigest = RowDigest.EMPTY;
+        long excelDigest = RowDigest.EMPTY;
+        for (int i = 0; i < schema.sharedNames.length; i++) {
+            String exVal = excelRow.get(schema.sharedNames[i]);
+            if (exVal == null && !excelRow.containsKey(schema.sharedNames[i])) {
+                return false;
+            }
+            dbDigest = RowDigest.trimmed(dbDigest, out[schema.sharedTarget[i]]);
+            excelDigest = RowDigest.trimmed(excelDigest, exVal);
+        }
+        return dbDigest == excelDigest;
+    }
+
+    private static boolean sharedDigestsMatch(ReconcileSchema schema, String[] out, String[] excelRow) {
+        long dbDigest = RowDigest.EMPTY;
+        long excelDigest = RowDigest.EMPTY;
+        for (int i = 0; i < schema.sharedSource.length; i++) {
+            dbDigest = RowDigest.trimmed(dbDigest, out[schema.sharedTarget[i]]);
+            excelDigest = RowDigest.trimmed(excelDigest, value(excelRow, schema.sharedSource[i]));
+        }
+        return dbDigest == excelDigest;
+    }
+
+    private static String[] newRow(ReconcileSchema schema, Map<String, String> excelRow, int dbKeyIndex, String key) {
+        String[] out = new String[schema.size()];
+        Arrays.fill(out, "");
+        for (int i = 0; i < schema.excelOnlyNames.length; i++) {
+            out[schema.excelOnlyTarget[i]] = excelRow.getOrDefault(schema.excelOnlyNames[i], "");
+        }
+        if (dbKeyIndex >= 0) {
+            out[dbKeyIndex] = key;
+        }
+        out[schema.statusIndex] = "NEW";
+        out[schema.changedIndex] = "";
+        return out;
+    }
+
+    /**
+     * Streaming variant of {@link #reconcile} for sources too large to hold in memory.
+     * <p>
+     * The DB2 side is read with a forward-only cursor ordered by {@code keyColumn}; the Excel rows are sorted by key
+     * with an {@link ExternalRowSorter} that spills to {@code tempDir}. Both are then merge-joined and each output row
+     * goes straight to {@code sink}, so memory stays bounded by the sort buffer. Rows come out in key order instead of
+     * DB2 order followed by the NEW rows; statuses and values are the same as {@link #reconcile}.
+     *
+     * @param db2Query     the DB2 query, it is wrapped in {@code SELECT * FROM (...) ORDER BY keyColumn}
+     * @param excelColumns Excel header, {@code excelRows} hold the values in this order
+     * @param keyOrder     must match the order DB2 returns the keys in, e.g. a numeric comparator for numeric keys
+     * @return the number of rows written to the sink
+     */
+    public long reconcileStreaming(Connection connection, String db2Query, List<String> excelColumns,
+                                   Iterator<String[]> excelRows, String keyColumn, Comparator<String> keyOrder,
+                                   Path tempDir, ReconcileSink sink) throws SQLException, IOException {
+        String sql = "SELECT * FROM (" + db2Query + ") T ORDER BY " + keyColumn;
+        try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet cursor = statement.executeQuery()) {
+                return reconcileStreaming(cursor, excelColumns, excelRows, keyColumn, keyOrder, tempDir, sink);
+            }
+        }
+    }
+
+    /**
+     * Same as above on an open cursor, which must already be ordered by {@code keyColumn} in {@code keyOrder}.
+     */
+    public long reconcileStreaming(ResultSet db2Cursor, List<String> excelColumns, Iterator<String[]> excelRows,
+                                   String keyColumn, Comparator<String> keyOrder, Path tempDir,
+                                   ReconcileSink sink) throws SQLException, IOException {
+        ResultSetMetaData meta = db2Cursor.getMetaData();
+        List<String> dbColumns = new ArrayList<>();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            dbColumns.add(meta.getColumnLabel(i));
+        }
+        int dbKeyIndex = dbColumns.indexOf(keyColumn);
+        int excelKeyIndex = excelColumns.indexOf(keyColumn);
+        if (dbKeyIndex < 0 || excelKeyIndex < 0) {
+            throw new IllegalArgumentException("Key column " + keyColumn + " must exist in both DB2 and Excel");
+        }
+
+        ReconcileSchema schema = new ReconcileSchema(dbColumns, excelColumns);
+        chooseComparators(schema, meta);
+
+        sink.begin(schema.getColumns());
+        long[] counts = new long[STATUSES.length];
+        long start = System.nanoTime();
+        try (ExternalRowSorter sorter = new ExternalRowSorter(excelKeyIndex, keyOrder, SORT_BUFFER_ROWS, tempDir)) {
+            while (excelRows.hasNext()) {
+                sorter.add(excelRows.next());
+            }
+            Iterator<String[]> sortedExcel = sorter.sorted();
+            start = phase("streaming", "sort", start);
+            String[] excelRow = sortedExcel.hasNext() ? sortedExcel.next() : null;
+            boolean excelRowMatched = false;
+            String previousKey = null;
+
+            while (db2Cursor.next()) {
+                String[] out = new String[schema.size()];
+                for (int i = 0; i < dbColumns.size(); i++) {
+                    Object v = db2Cursor.getObject(i + 1);
+                    out[i] = v == null ? "" : String.valueOf(v);
+                }
+                Object keyObj = db2Cursor.getObject(dbKeyIndex + 1);
+                if (keyObj == null) {
+                    // NULL keys have no place in the merge order and cannot match an Excel row
+                    fillDbOnly(schema, out);
+                    emit(sink, out, schema, counts);
+                    continue;
+                }
+                String keyVal = String.valueOf(keyObj);
+                if (previousKey != null && keyOrder.compare(keyVal, previousKey) < 0) {
+                    throw new IllegalStateException("DB2 rows are not ordered by " + keyColumn + " in the given key order: "
+                            + previousKey + " before " + keyVal);
+                }
+                previousKey = keyVal;
+
+                // Excel keys before this DB2 key are NEW, unless an earlier DB2 row with the same key matched them
+                while (excelRow != null && keyOrder.compare(excelKey(excelRow, excelKeyIndex), keyVal) < 0) {
+                    if (!excelRowMatched) {
+                        emit(sink, newRow(schema, excelRow, dbKeyIndex, excelKey(excelRow, excelKeyIndex)), schema, counts);
+                    }
+                    excelRow = sortedExcel.hasNext() ? sortedExcel.next() : null;
+                    excelRowMatched = false;
                 }
-                for (String c : excelOnlyColumns) {
-                    out.put(c, excelRow.getOrDefault(c, ""));
+
+                if (excelRow != null && keyOrder.compare(excelKey(excelRow, excelKeyIndex), keyVal) == 0) {
+                    for (int i = 0; i < schema.excelOnlySource.length; i++) {
+                        out[schema.excelOnlyTarget[i]] = value(excelRow, schema.excelOnlySource[i]);
+                    }
+                    List<String> changedCols = null;
+                    if (!sharedDigestsMatch(schema, out, excelRow)) {
+                        for (int i = 0; i < schema.sharedSource.length; i++) {
+                            if (!schema.sharedComparators[i].equal(out[schema.sharedTarget[i]],
+                                    value(excelRow, schema.sharedSource[i]))) {
+                                if (changedCols == null) {
+                                    changedCols = new ArrayList<>();
+                                }
+                                changedCols.add(schema.sharedNames[i]);
+                            }
+                        }
+                    }
+                    out[schema.statusIndex] = changedCols == null ? "MATCHED" : "CHANGED";
+                    out[schema.changedIndex] = changedCols == null ? "" : String.join(",", changedCols);
+                    excelRowMatched = true;
+                } else {
+                    fillDbOnly(schema, out);
                 }
-                if (dbColumns.contains(keyColumn) && out.get(keyColumn).isBlank()) {
-                    out.put(keyColumn, key);
+                emit(sink, out, schema, counts);
+            }
+
+            while (excelRow != null) {
+                if (!excelRowMatched) {
+                    emit(sink, newRow(schema, excelRow, dbKeyIndex, excelKey(excelRow, excelKeyIndex)), schema, counts);
                 }
-                out.put(STATUS_COL, "NEW");
-                out.put(CHANGED_COLS, "");
-                outputRows.add(out);
+                excelRow = sortedExcel.hasNext() ? sortedExcel.next() : null;
+                excelRowMatched = false;
             }
         }
+        sink.end();
+        phase("streaming", "merge", start);
 
-        return new ReconcileResult(columnsOrdered, outputRows);
+        long written = 0;
+        for (int i = 0; i < STATUSES.length; i++) {
+            metrics.countRows("streaming", STATUSES[i], counts[i]);
+            written += counts[i];
+        }
+        return written;
+    }
+
+    private static void emit(ReconcileSink sink, String[] row, ReconcileSchema schema, long[] counts) throws IOException {
+        sink.row(row);
+        counts[statusOrdinal(row[schema.statusIndex])]++;
+    }
+
+    private static void fillDbOnly(ReconcileSchema schema, String[] out) {
+        for (int target : schema.excelOnlyTarget) {
+            out[target] = "";
+        }
+        out[schema.statusIndex] = "DB_ONLY";
+        out[schema.changedIndex] = "";
+    }
+
+    private static String[] newRow(ReconcileSchema schema, String[] excelRow, int dbKeyIndex, String key) {
+        String[] out = new String[schema.size()];
+        Arrays.fill(out, "");
+        for (int i = 0; i < schema.excelOnlySource.length; i++) {
+            out[schema.excelOnlyTarget[i]] = value(excelRow, schema.excelOnlySource[i]);
+        }
+        out[dbKeyIndex] = key;
+        out[schema.statusIndex] = "NEW";
+        out[schema.changedIndex] = "";
+        return out;
+    }
+
+    private static String excelKey(String[] excelRow, int keyIndex) {
+        return value(excelRow, keyIndex);
+    }
+
+    private static String value(String[] row, int index) {
+        String v = index < row.length ? row[index] : null;
+        return v == null ? "" : v;
+    }
+
+    private static class Partition {
+        // Indexes into the DB2 row list and the Excel entry list, in source order
+        private int[] dbRows = new int[16];
+        private int dbCount;
+        private int[] excelEntries = new int[16];
+        private int excelCount;
+
+        void addDbRow(int i) {
+            if (dbCount == dbRows.length) {
+                dbRows = Arrays.copyOf(dbRows, dbCount * 2);
+            }
+            dbRows[dbCount++] = i;
+        }
+
+        void addExcelEntry(int i) {
+            if (excelCount == excelEntries.length) {
+                excelEntries = Arrays.copyOf(excelEntries, excelCount * 2);
+            }
+            excelEntries[excelCount++] = i;
+        }
     }
 }
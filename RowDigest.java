@@ -0,0 +1,58 @@
+/**
+ * 64-bit FNV-1a digests of reconcile rows.
+ * <p>
+ * {@link #trimmed} hashes the values as {@link String#trim()} would leave them without creating the trimmed strings,
+ * so two rows whose shared columns compare equal in {@link ReconcilerService} always get the same digest. Equal
+ * digests are taken as equal rows; at 64 bits a false match is not a practical concern for tables of this size.
+ */
+final class RowDigest {
+
+    static final long EMPTY = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    // Separates values so that {"ab","c"} and {"a","bc"} differ
+    private static final int SEPARATOR = 0x1F;
+
+    private RowDigest() {
+    }
+
+    /**
+     * Adds {@code value.trim()} to {@code digest}.
+     */
+    static long trimmed(long digest, String value) {
+        if (value != null) {
+            int start = 0;
+            int end = value.length();
+            while (start < end && value.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && value.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            digest = chars(digest, value, start, end);
+        }
+        return (digest ^ SEPARATOR) * PRIME;
+    }
+
+    /**
+     * Adds {@code value} as is; null and "" differ.
+     */
+    static long exact(long digest, String value) {
+        if (value == null) {
+            return (digest ^ 0xFFFF) * PRIME;
+        }
+        return (chars(digest, value, 0, value.length()) ^ SEPARATOR) * PRIME;
+    }
+
+    static long combine(long digest, long value) {
+        return (digest ^ value) * PRIME + (value >>> 29);
+    }
+
+    private static long chars(long digest, String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            digest = (digest ^ (c & 0xFF)) * PRIME;
+            digest = (digest ^ (c >>> 8)) * PRIME;
+        }
+        return digest;
+    }
+}
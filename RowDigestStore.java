@@ -0,0 +1,78 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-key digests of the DB2 and Excel rows of one reconcile, kept between runs for the incremental mode.
+ * <p>
+ * The store is tied to a layout fingerprint (columns and key column); a store written for another layout loads empty,
+ * which makes the next incremental run a full one.
+ */
+class RowDigestStore {
+
+    private static final int MAGIC = 0x52444753;
+    private static final int VERSION = 1;
+
+    private final long layout;
+    // key -> {DB2 digest, Excel digest}, 0 for a side the key is missing from
+    private final Map<String, long[]> digests = new HashMap<>();
+
+    RowDigestStore(long layout) {
+        this.layout = layout;
+    }
+
+    long[] get(String key) {
+        return digests.get(key);
+    }
+
+    void put(String key, long dbDigest, long excelDigest) {
+        digests.put(key, new long[]{dbDigest, excelDigest});
+    }
+
+    int size() {
+        return digests.size();
+    }
+
+    static RowDigestStore load(Path file, long layout) {
+        RowDigestStore store = new RowDigestStore(layout);
+        if (!Files.isRegularFile(file)) {
+            return store;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != layout) {
+                return store;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                store.put(in.readUTF(), in.readLong(), in.readLong());
+            }
+        } catch (IOException e) {
+            // Unreadable or truncated, reconcile everything
+            return new RowDigestStore(layout);
+        }
+        return store;
+    }
+
+    void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(layout);
+            out.writeInt(digests.size());
+            for (Map.Entry<String, long[]> e : digests.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue()[0]);
+                out.writeLong(e.getValue()[1]);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,226 @@
+package shujiaw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 校验规则统计：每种规则和每一列的执行次数、失败次数和耗时。
+ * <p>
+ * Evaluations and failures are counted exactly. Only one evaluation in {@link #SAMPLE_RATE} is timed, the
+ * cumulative time is estimated from the sampled average, so the two {@code nanoTime} calls stay off most rule
+ * checks. All counters are {@link LongAdder}s, one instance is shared by every conversion of an engine.
+ */
+public class RuleMetrics implements RuleMetricsMBean {
+
+    static final int SAMPLE_RATE = 64;
+    private static final int TOP_COLUMNS = 20;
+
+    private final Counter[] columns;
+    private final ConcurrentHashMap<String, Counter> rules = new ConcurrentHashMap<String, Counter>();
+
+    public RuleMetrics(String[] headers) {
+        this.columns = new Counter[headers.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Counter(headers[i]);
+        }
+    }
+
+    /**
+     * @return the start time if this evaluation is sampled, otherwise 0
+     */
+    long start() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @param rule   the rule as written in conf.properties, e.g. {@code Range1-2-3}
+     * @param column output column the rule ran on
+     * @param start  value returned by {@link #start()}
+     */
+    void record(String rule, int column, boolean failed, long start) {
+        long nanos = start == 0 ? -1 : System.nanoTime() - start;
+        Counter ruleCounter = rules.get(rule);
+        if (ruleCounter == null) {
+            ruleCounter = new Counter(ruleType(rule));
+            Counter existing = rules.putIfAbsent(rule, ruleCounter);
+            if (existing != null) {
+                ruleCounter = existing;
+            }
+        }
+        ruleCounter.record(failed, nanos);
+        if (column < columns.length) {
+            columns[column].record(failed, nanos);
+        }
+    }
+
+    // Range1-2-3 and Range1-2 are both counted as Range, DependA16A=1 as Depend
+    private static String ruleType(String rule) {
+        for (String type : new String[]{"Depend", "Range"}) {
+            if (rule.startsWith(type)) {
+                return type;
+            }
+        }
+        return rule;
+    }
+
+    @Override
+    public long getEvaluations() {
+        long sum = 0;
+        for (Counter counter : columns) {
+            sum += counter.evaluations.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public long getFailures() {
+        long sum = 0;
+        for (Counter counter : columns) {
+            sum += counter.failures.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public void reset() {
+        for (Counter counter : columns) {
+            counter.reset();
+        }
+        rules.clear();
+    }
+
+    /**
+     * Rule types, then the slowest columns.
+     */
+    @Override
+    public String getTable() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-12s %12s %10s %12s %10s%n", "规则", "次数", "失败", "估计耗时ms", "ns/次"));
+        for (Counter counter : ruleTypes()) {
+            appendRow(sb, counter.name, counter);
+        }
+        sb.append(String.format("%n%-12s %12s %10s %12s %10s%n", "列(耗时前" + TOP_COLUMNS + ")", "次数", "失败",
+                "估计耗时ms", "ns/次"));
+        for (Counter counter : topColumns()) {
+            appendRow(sb, counter.name, counter);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder sb = new StringBuilder("{\"sampleRate\":").append(SAMPLE_RATE).append(",\"rules\":[");
+        appendJson(sb, ruleTypes());
+        sb.append("],\"columns\":[");
+        List<Counter> used = new ArrayList<Counter>();
+        for (Counter counter : columns) {
+            if (counter.evaluations.sum() > 0) {
+                used.add(counter);
+            }
+        }
+        appendJson(sb, used);
+        return sb.append("]}").toString();
+    }
+
+    private List<Counter> ruleTypes() {
+        Map<String, Counter> byType = new TreeMap<String, Counter>();
+        for (Counter counter : rules.values()) {
+            Counter total = byType.get(counter.name);
+            if (total == null) {
+                total = new Counter(counter.name);
+                byType.put(counter.name, total);
+            }
+            total.add(counter);
+        }
+        return new ArrayList<Counter>(byType.values());
+    }
+
+    private List<Counter> topColumns() {
+        List<Counter> sorted = new ArrayList<Counter>(Arrays.asList(columns));
+        Collections.sort(sorted, new Comparator<Counter>() {
+            @Override
+            public int compare(Counter o1, Counter o2) {
+                return Long.compare(o2.estimatedNanos(), o1.estimatedNanos());
+            }
+        });
+        List<Counter> top = new ArrayList<Counter>();
+        for (Counter counter : sorted) {
+            if (top.size() == TOP_COLUMNS || counter.evaluations.sum() == 0) {
+                break;
+            }
+            top.add(counter);
+        }
+        return top;
+    }
+
+    private static void appendRow(StringBuilder sb, String name, Counter counter) {
+        long evaluations = counter.evaluations.sum();
+        long nanos = counter.estimatedNanos();
+        sb.append(String.format("%-12s %12d %10d %12.1f %10d%n", name, evaluations, counter.failures.sum(),
+                nanos / 1e6, evaluations == 0 ? 0 : nanos / evaluations));
+    }
+
+    private static void appendJson(StringBuilder sb, List<Counter> counters) {
+        for (int i = 0; i < counters.size(); i++) {
+            Counter counter = counters.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":\"").append(counter.name.replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\",\"evaluations\":").append(counter.evaluations.sum())
+                    .append(",\"failures\":").append(counter.failures.sum())
+                    .append(",\"nanos\":").append(counter.estimatedNanos())
+                    .append('}');
+        }
+    }
+
+    private static class Counter {
+        private final String name;
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder sampledNanos = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        void record(boolean failed, long nanos) {
+            evaluations.increment();
+            if (failed) {
+                failures.increment();
+            }
+            if (nanos >= 0) {
+                samples.increment();
+                sampledNanos.add(nanos);
+            }
+        }
+
+        void add(Counter other) {
+            evaluations.add(other.evaluations.sum());
+            failures.add(other.failures.sum());
+            samples.add(other.samples.sum());
+            sampledNanos.add(other.sampledNanos.sum());
+        }
+
+        void reset() {
+            evaluations.reset();
+            failures.reset();
+            samples.reset();
+            sampledNanos.reset();
+        }
+
+        long estimatedNanos() {
+            long sampleCount = samples.sum();
+            return sampleCount == 0 ? 0 : sampledNanos.sum() * evaluations.sum() / sampleCount;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package shujiaw;
+
+/**
+ * JMX view of {@link RuleMetrics}, registered by {@link BatchConverter} with {@code -jmx}.
+ */
+public interface RuleMetricsMBean {
+
+    long getEvaluations();
+
+    long getFailures();
+
+    String getTable();
+
+    String getJson();
+
+    void reset();
+}
@@ -0,0 +1,208 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SqlScan} results of .sql files, kept on disk between runs of {@link ProcedureScanner}.
+ * <p>
+ * An entry is keyed by the file's path and valid while its mtime and size are unchanged, in which case the file is
+ * not opened at all. When only the mtime moved (checkout, copy) the content hash decides. A cache written by another
+ * {@link SqlLexer#VERSION} is dropped as a whole. Files of
+ * {@link #MAP_THRESHOLD} bytes or more are memory-mapped, smaller ones are read into a per-thread buffer that is
+ * reused across files. {@link #scan} is safe to call from several threads.
+ */
+class ScanCache {
+
+    static final String FILE_NAME = ".procscan.cache";
+    static final int MAP_THRESHOLD = 1 << 20;
+
+    private static final int MAGIC = 0x50534331;
+    // Layout of the file; what the scans hold is versioned by SqlLexer.VERSION
+    private static final int VERSION = 2;
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1 << 16));
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ScanCache(Path file) {
+        this.file = file;
+    }
+
+    static ScanCache load(Path file) {
+        ScanCache cache = new ScanCache(file);
+        if (!Files.isRegularFile(file)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != SqlLexer.VERSION) {
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long mtime = in.readLong();
+                long size = in.readLong();
+                long hash = in.readLong();
+                cache.entries.put(path, new Entry(mtime, size, hash, readScan(in)));
+            }
+        } catch (IOException e) {
+            // Unreadable or truncated, rescan everything
+            return new ScanCache(file);
+        }
+        return cache;
+    }
+
+    SqlScan scan(Path sqlFile) throws IOException {
+        String key = sqlFile.toAbsolutePath().normalize().toString();
+        BasicFileAttributes attrs = Files.readAttributes(sqlFile, BasicFileAttributes.class);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        long size = attrs.size();
+        Entry cached = entries.get(key);
+        if (cached != null && cached.mtime == mtime && cached.size == size) {
+            hits.increment();
+            return cached.scan;
+        }
+
+        try (FileChannel channel = FileChannel.open(sqlFile, StandardOpenOption.READ)) {
+            ByteBuffer bytes = size >= MAP_THRESHOLD ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                    : read(channel, (int) size);
+            long hash = hash(bytes);
+            if (cached != null && cached.size == size && cached.hash == hash) {
+                entries.put(key, new Entry(mtime, size, hash, cached.scan));
+                hits.increment();
+                return cached.scan;
+            }
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes);
+            SqlScan scan = SqlLexer.scan(chars);
+            entries.put(key, new Entry(mtime, size, hash, scan));
+            misses.increment();
+            return scan;
+        }
+    }
+
+    /**
+     * Writes the cache, dropping entries of files that are no longer in {@code existing}.
+     */
+    void save(Collection<Path> existing) throws IOException {
+        Set<String> keep = new HashSet<>();
+        for (Path path : existing) {
+            keep.add(path.toAbsolutePath().normalize().toString());
+        }
+        entries.keySet().retainAll(keep);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(SqlLexer.VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().mtime);
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().hash);
+                writeScan(out, e.getValue().scan);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private static ByteBuffer read(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = BUFFERS.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(size) << 1);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear().limit(size);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // keep reading
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // 64-bit FNV-1a; leaves the buffer's position where it was
+    private static long hash(ByteBuffer bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = bytes.position(), end = bytes.limit(); i < end; i++) {
+            hash = (hash ^ (bytes.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void writeScan(DataOutputStream out, SqlScan scan) throws IOException {
+        out.writeBoolean(scan.hasDynamicSql());
+        out.writeInt(scan.getCalls().size());
+        for (String call : scan.getCalls()) {
+            out.writeUTF(call);
+        }
+        out.writeInt(scan.getTables().size());
+        for (Map.Entry<String, Set<String>> e : scan.getTables().entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue().size());
+            for (String table : e.getValue()) {
+                out.writeUTF(table);
+            }
+        }
+    }
+
+    private static SqlScan readScan(DataInputStream in) throws IOException {
+        SqlScan scan = new SqlScan();
+        scan.setDynamicSql(in.readBoolean());
+        for (int i = in.readInt(); i > 0; i--) {
+            scan.addCall(in.readUTF());
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            String op = in.readUTF();
+            for (int j = in.readInt(); j > 0; j--) {
+                scan.addTable(op, in.readUTF());
+            }
+        }
+        return scan;
+    }
+
+    private static class Entry {
+        final long mtime;
+        final long size;
+        final long hash;
+        final SqlScan scan;
+
+        Entry(long mtime, long size, long hash, SqlScan scan) {
+            this.mtime = mtime;
+            this.size = size;
+            this.hash = hash;
+            this.scan = scan;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SchemaId;
+import com.networknt.schema.SchemaLocation;
+import com.networknt.schema.SchemaValidatorsConfig;
+import com.networknt.schema.SpecVersion.VersionFlag;
+import com.networknt.schema.ValidationMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Validates schema definitions and JSON records in bulk.
+ * <p>
+ * The factory and the Draft 2020-12 meta-schema are built once per engine. Compiled schemas are kept in an LRU cache
+ * of {@code cacheSize} entries keyed by {@code $id} and a 64-bit hash of the schema text, so an edited schema with
+ * the same {@code $id} compiles again while an unchanged one is never recompiled.
+ * <p>
+ * Record files are read with Jackson's streaming parser: one top-level array, or NDJSON / concatenated JSON values,
+ * so a file never has to fit in memory. Records are validated in batches of {@link #BATCH} on a fixed pool; a full
+ * queue makes the reading thread validate the batch itself, which bounds the records in flight.
+ */
+public class SchemaValidationEngine implements AutoCloseable {
+
+    static final int BATCH = 1000;
+    static final int SAMPLE_SIZE = 20;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonSchemaFactory factory = JsonSchemaFactory.getInstance(VersionFlag.V202012);
+    private final SchemaValidatorsConfig config = SchemaValidatorsConfig.builder().build();
+    private final JsonSchema metaSchema;
+    private final Map<String, JsonSchema> cache;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder compiled = new LongAdder();
+
+    public SchemaValidationEngine(int cacheSize, int threads) {
+        metaSchema = factory.getSchema(SchemaLocation.of(SchemaId.V202012), config);
+        metaSchema.initializeValidators();
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, JsonSchema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JsonSchema> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), r -> {
+            Thread t = new Thread(r, "schema-validate-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public SchemaValidationEngine() {
+        this(256, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Validates a schema definition against the Draft 2020-12 meta-schema.
+     */
+    public Set<ValidationMessage> checkSchema(String schemaContent) throws IOException {
+        return metaSchema.validate(mapper.readTree(schemaContent));
+    }
+
+    /**
+     * Returns the compiled schema, from the cache when the same {@code $id} and text were compiled before.
+     */
+    public JsonSchema compile(String schemaContent) throws IOException {
+        JsonNode node = mapper.readTree(schemaContent);
+        String key = node.path("$id").asText("") + "#" + Long.toHexString(hash(schemaContent));
+        JsonSchema schema = cache.get(key);
+        if (schema == null) {
+            // Compiled outside the lock; two threads may compile the same schema once each
+            schema = factory.getSchema(node, config);
+            // Builds all validators now, after which the schema is safe to share between threads
+            schema.initializeValidators();
+            compiled.increment();
+            cache.put(key, schema);
+        }
+        return schema;
+    }
+
+    public JsonSchema compile(Path schemaFile) throws IOException {
+        return compile(new String(Files.readAllBytes(schemaFile), StandardCharsets.UTF_8));
+    }
+
+    public Report validate(JsonSchema schema, Path records) throws IOException {
+        try (InputStream in = Files.newInputStream(records)) {
+            return validate(schema, in);
+        }
+    }
+
+    public Report validate(JsonSchema schema, InputStream records) throws IOException {
+        Report report = new Report();
+        List<Future<?>> pending = new ArrayList<>();
+        try (JsonParser parser = mapper.getFactory().createParser(records)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            long index = 0;
+            List<JsonNode> batch = new ArrayList<>(BATCH);
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                batch.add(mapper.readTree(parser));
+                if (batch.size() == BATCH) {
+                    pending.add(submit(schema, batch, index, report));
+                    index += BATCH;
+                    batch = new ArrayList<>(BATCH);
+                }
+                token = parser.nextToken();
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submit(schema, batch, index, report));
+            }
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Validation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Validation failed", e.getCause());
+            }
+        }
+        return report;
+    }
+
+    public long getCompiledCount() {
+        return compiled.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private Future<?> submit(JsonSchema schema, List<JsonNode> batch, long firstIndex, Report report) {
+        return executor.submit(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                report.add(firstIndex + i, schema.validate(batch.get(i)));
+            }
+        });
+    }
+
+    // 64-bit FNV-1a over the schema text
+    private static long hash(String content) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < content.length(); i++) {
+            hash = (hash ^ content.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Aggregated result of one record file: error counts per rule (schema location of the failing keyword) and a
+     * sample of the first messages seen.
+     */
+    public static class Report {
+        private final LongAdder records = new LongAdder();
+        private final LongAdder invalid = new LongAdder();
+        private final Map<String, LongAdder> byRule = new ConcurrentHashMap<>();
+        private final List<String> samples = Collections.synchronizedList(new ArrayList<>());
+
+        void add(long index, Set<ValidationMessage> errors) {
+            records.increment();
+            if (errors.isEmpty()) {
+                return;
+            }
+            invalid.increment();
+            for (ValidationMessage vm : errors) {
+                byRule.computeIfAbsent(vm.getType() + " " + vm.getSchemaLocation(), k -> new LongAdder()).increment();
+                synchronized (samples) {
+                    if (samples.size() < SAMPLE_SIZE) {
+                        samples.add("record " + index + ": " + vm.getMessage());
+                    }
+                }
+            }
+        }
+
+        public long getRecords() {
+            return records.sum();
+        }
+
+        public long getInvalidRecords() {
+            return invalid.sum();
+        }
+
+        public Map<String, Long> getCountsByRule() {
+            Map<String, Long> counts = new TreeMap<>();
+            byRule.forEach((rule, count) -> counts.put(rule, count.sum()));
+            return counts;
+        }
+
+        public List<String> getSamples() {
+            synchronized (samples) {
+                return new ArrayList<>(samples);
+            }
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%d records, %d invalid%n", getRecords(), getInvalidRecords());
+            getCountsByRule().forEach((rule, count) -> out.printf("  %8d  %s%n", count, rule));
+            for (String sample : getSamples()) {
+                out.println("  " + sample);
+            }
+        }
+    }
+}
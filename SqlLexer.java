@@ -0,0 +1,384 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Single-pass scanner for DB2 SQL PL procedure sources.
+ * <p>
+ * The source is cut into tokens once: comments and string literals are dropped, quoted identifiers are kept as
+ * names. A second linear walk over the tokens tracks the parenthesis depth, keeping per depth whether a SELECT and a
+ * FROM list are open, and collects {@code CALL CRDW|CRDB.x}, the tables behind FROM, JOIN, INSERT INTO, UPDATE,
+ * DELETE FROM and MERGE INTO, {@code TABLE(fn(...))} and {@code EXECUTE IMMEDIATE}. Names defined by a
+ * {@code WITH name AS (...)} are not reported as tables up to the end of the statement; the tables inside the CTE
+ * body are.
+ * <p>
+ * A FROM only starts a table list when a SELECT was seen at the same depth and no FROM since, so
+ * {@code EXTRACT(YEAR FROM d)}, {@code SUBSTRING(s FROM 2)} or {@code a IS DISTINCT FROM b} are not taken for tables.
+ */
+public final class SqlLexer {
+
+    /**
+     * Version of what the scan extracts. Bump it with every change that can report other calls or tables for the
+     * same source, so that {@link ScanCache} drops the scans of the earlier lexer. 2: IS DISTINCT FROM, 3: CTE names
+     * end with their statement.
+     */
+    static final int VERSION = 3;
+
+    private static final int WORD = 0;
+    private static final int QUOTED = 1;
+    private static final int DOT = 2;
+    private static final int COMMA = 3;
+    private static final int LPAREN = 4;
+    private static final int RPAREN = 5;
+    private static final int SEMI = 6;
+    private static final int OTHER = 7;
+
+    // End the table list of a FROM at the same depth
+    private static final String[] FROM_TERMINATORS = {"WHERE", "GROUP", "HAVING", "ORDER", "UNION", "EXCEPT",
+            "INTERSECT", "FETCH", "FOR", "WITH", "SET", "VALUES", "SELECT", "INTO", "WHEN", "THEN", "OPTIMIZE",
+            "LIMIT", "OFFSET", "QUERYNO", "SKIP", "WAIT", "NOWAIT"};
+
+    private final CharSequence sql;
+    private int[] types;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+
+    private final SqlScan scan = new SqlScan();
+    private final Set<String> cteNames = new HashSet<>();
+    private final StringBuilder name = new StringBuilder();
+
+    private SqlLexer(CharSequence sql) {
+        this.sql = sql;
+        int capacity = Math.max(16, sql.length() / 4);
+        types = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    public static SqlScan scan(CharSequence sql) {
+        SqlLexer lexer = new SqlLexer(sql);
+        lexer.tokenize();
+        lexer.walk();
+        return lexer.scan;
+    }
+
+    private void tokenize() {
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c <= ' ') {
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                i += 2;
+                while (i < n && !(sql.charAt(i) == '*' && i + 1 < n && sql.charAt(i + 1) == '/')) {
+                    i++;
+                }
+                i = Math.min(n, i + 2);
+            } else if (c == '\'') {
+                i = closing(i, '\'');
+            } else if (c == '"') {
+                int end = closing(i, '"');
+                add(QUOTED, i, end);
+                i = end;
+            } else if (isWordChar(c)) {
+                int start = i;
+                while (i < n && isWordChar(sql.charAt(i))) {
+                    i++;
+                }
+                add(WORD, start, i);
+            } else {
+                add(c == '.' ? DOT : c == ',' ? COMMA : c == '(' ? LPAREN : c == ')' ? RPAREN : c == ';' ? SEMI
+                        : OTHER, i, i + 1);
+                i++;
+            }
+        }
+    }
+
+    // Index after the closing quote; a doubled quote is an escaped one
+    private int closing(int open, char quote) {
+        int n = sql.length();
+        int i = open + 1;
+        while (i < n) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || c == '#' || c == '@' || c == '$' || Character.isLetterOrDigit(c);
+    }
+
+    private void add(int type, int start, int end) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        types[count] = type;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private void walk() {
+        // per depth: SELECT seen, FROM list open, table reference expected next
+        boolean[] select = new boolean[16];
+        boolean[] from = new boolean[16];
+        boolean[] expect = new boolean[16];
+        int depth = 0;
+        int withDepth = -1;
+
+        for (int i = 0; i < count; i++) {
+            switch (types[i]) {
+                case LPAREN:
+                    // A derived table, (SELECT ...) AS x
+                    expect[depth] = false;
+                    depth++;
+                    if (depth == select.length) {
+                        select = Arrays.copyOf(select, depth * 2);
+                        from = Arrays.copyOf(from, depth * 2);
+                        expect = Arrays.copyOf(expect, depth * 2);
+                    }
+                    select[depth] = false;
+                    from[depth] = false;
+                    expect[depth] = false;
+                    continue;
+                case RPAREN:
+                    if (depth > 0) {
+                        depth--;
+                    }
+                    if (withDepth == depth) {
+                        int body = type(i + 1) == COMMA ? cte(i + 2) : -1;
+                        if (body >= 0) {
+                            i = body - 1;
+                        } else {
+                            withDepth = -1;
+                        }
+                    }
+                    continue;
+                case SEMI:
+                    depth = 0;
+                    withDepth = -1;
+                    // A CTE name only hides tables inside its own statement
+                    cteNames.clear();
+                    select[0] = false;
+                    from[0] = false;
+                    expect[0] = false;
+                    continue;
+                case COMMA:
+                    if (from[depth]) {
+                        expect[depth] = true;
+                    }
+                    continue;
+                case WORD:
+                case QUOTED:
+                    break;
+                default:
+                    continue;
+            }
+
+            if (expect[depth]) {
+                expect[depth] = false;
+                i = tableRef(i, SqlScan.SELECT);
+                continue;
+            }
+            if (from[depth] && isAny(i, FROM_TERMINATORS)) {
+                from[depth] = false;
+            }
+
+            if (is(i, "SELECT")) {
+                select[depth] = true;
+            } else if (is(i, "FROM")) {
+                // Not the FROM of IS [NOT] DISTINCT FROM
+                if (select[depth] && !is(i - 1, "DISTINCT")) {
+                    // Used up, a later FROM at this depth needs another SELECT
+                    select[depth] = false;
+                    from[depth] = true;
+                    expect[depth] = true;
+                }
+            } else if (is(i, "JOIN")) {
+                i = tableRef(i + 1, SqlScan.JOIN);
+            } else if (is(i, "INSERT") && is(i + 1, "INTO")) {
+                i = table(i + 2, SqlScan.INSERT);
+            } else if (is(i, "DELETE") && is(i + 1, "FROM")) {
+                i = table(i + 2, SqlScan.DELETE);
+            } else if (is(i, "MERGE") && is(i + 1, "INTO")) {
+                i = table(i + 2, SqlScan.MERGE);
+            } else if (is(i, "UPDATE")) {
+                // Not FOR UPDATE OF, ON UPDATE or MERGE's UPDATE SET
+                if (!is(i - 1, "FOR") && !is(i - 1, "ON") && !is(i + 1, "SET") && !is(i + 1, "OF")) {
+                    i = table(i + 1, SqlScan.UPDATE);
+                }
+            } else if (is(i, "CALL")) {
+                i = call(i + 1);
+            } else if (is(i, "EXECUTE") && is(i + 1, "IMMEDIATE")) {
+                scan.setDynamicSql(true);
+                i++;
+            } else if (is(i, "WITH")) {
+                int body = cte(i + 1);
+                if (body >= 0) {
+                    withDepth = depth;
+                    i = body - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * A FROM or JOIN item: a table, {@code TABLE(fn(...))}, {@code FINAL TABLE (INSERT ...)} or a derived table.
+     * Returns the index of the last token consumed.
+     */
+    private int tableRef(int i, String op) {
+        if (is(i, "LATERAL")) {
+            i++;
+        }
+        if ((is(i, "FINAL") || is(i, "NEW") || is(i, "OLD")) && is(i + 1, "TABLE")) {
+            // Data-change table reference, the statement inside is scanned as usual
+            return i + 1;
+        }
+        if (is(i, "TABLE") && type(i + 1) == LPAREN) {
+            int end = name(i + 2);
+            if (end > 0 && type(end) == LPAREN) {
+                record(SqlScan.TABLE_FUNC, name.toString());
+            }
+            return i;
+        }
+        if (type(i) == LPAREN) {
+            return i - 1;
+        }
+        return table(i, op);
+    }
+
+    private int table(int i, String op) {
+        int end = name(i);
+        if (end < 0) {
+            return i - 1;
+        }
+        record(op, name.toString());
+        return end - 1;
+    }
+
+    private int call(int i) {
+        int end = name(i);
+        if (end < 0) {
+            return i - 1;
+        }
+        int dot = name.indexOf(".");
+        if (dot > 0 && name.indexOf(".", dot + 1) < 0) {
+            String schema = name.substring(0, dot);
+            if (schema.equalsIgnoreCase("CRDW") || schema.equalsIgnoreCase("CRDB")) {
+                scan.addCall(name.substring(dot + 1));
+            }
+        }
+        return end - 1;
+    }
+
+    /**
+     * {@code name [(columns)] AS (}: registers the CTE name and returns the index of the body's parenthesis, or -1.
+     */
+    private int cte(int i) {
+        int t = type(i);
+        if (t != WORD && t != QUOTED) {
+            return -1;
+        }
+        int j = i + 1;
+        if (type(j) == LPAREN) {
+            int level = 0;
+            for (; j < count; j++) {
+                if (types[j] == LPAREN) {
+                    level++;
+                } else if (types[j] == RPAREN && --level == 0) {
+                    break;
+                }
+            }
+            j++;
+        }
+        if (!is(j, "AS") || type(j + 1) != LPAREN) {
+            return -1;
+        }
+        cteNames.add(normalize(text(i)));
+        return j + 1;
+    }
+
+    /**
+     * Reads {@code part(.part)*} into {@link #name} and returns the index after it, or -1 if there is no name at i.
+     */
+    private int name(int i) {
+        name.setLength(0);
+        int t = type(i);
+        if (t != WORD && t != QUOTED) {
+            return -1;
+        }
+        name.append(sql, starts[i], ends[i]);
+        i++;
+        while (type(i) == DOT && (type(i + 1) == WORD || type(i + 1) == QUOTED)) {
+            name.append('.').append(sql, starts[i + 1], ends[i + 1]);
+            i += 2;
+        }
+        return i;
+    }
+
+    private void record(String op, String table) {
+        if (table.indexOf('.') < 0 && cteNames.contains(normalize(table))) {
+            return;
+        }
+        scan.addTable(op, table);
+    }
+
+    // Unquoted names compare case-insensitively, quoted ones as written
+    private static String normalize(String identifier) {
+        if (identifier.length() >= 2 && identifier.charAt(0) == '"') {
+            return identifier.substring(1, identifier.length() - 1);
+        }
+        return identifier.toUpperCase();
+    }
+
+    private int type(int i) {
+        return i >= 0 && i < count ? types[i] : -1;
+    }
+
+    private String text(int i) {
+        return sql.subSequence(starts[i], ends[i]).toString();
+    }
+
+    // Case-insensitive match of a WORD token against an upper-case keyword
+    private boolean is(int i, String keyword) {
+        if (type(i) != WORD || ends[i] - starts[i] != keyword.length()) {
+            return false;
+        }
+        int start = starts[i];
+        for (int k = 0; k < keyword.length(); k++) {
+            char c = sql.charAt(start + k);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (c != keyword.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAny(int i, String[] keywords) {
+        for (String keyword : keywords) {
+            if (is(i, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What {@link SqlLexer} found in one procedure: called procedures, table usages per operation and whether it runs
+ * dynamic SQL.
+ */
+public class SqlScan {
+
+    public static final String SELECT = "SELECT";
+    public static final String JOIN = "JOIN";
+    public static final String INSERT = "INSERT";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+    public static final String MERGE = "MERGE";
+    public static final String TABLE_FUNC = "TABLE_FUNC";
+
+    private final Set<String> calls = new TreeSet<>();
+    // operation -> tables, in name order so that output and cache files are stable
+    private final Map<String, Set<String>> tables = new TreeMap<>();
+    private boolean dynamicSql;
+
+    void addCall(String procedure) {
+        calls.add(procedure);
+    }
+
+    void addTable(String operation, String table) {
+        tables.computeIfAbsent(operation, k -> new TreeSet<>()).add(table);
+    }
+
+    void setDynamicSql(boolean dynamicSql) {
+        this.dynamicSql = dynamicSql;
+    }
+
+    public Set<String> getCalls() {
+        return Collections.unmodifiableSet(calls);
+    }
+
+    public Map<String, Set<String>> getTables() {
+        return Collections.unmodifiableMap(tables);
+    }
+
+    public boolean hasDynamicSql() {
+        return dynamicSql;
+    }
+
+    /**
+     * Table usages as {@code "OP -> table"}, the format the scanner has always printed.
+     */
+    public Set<String> getUsages() {
+        Set<String> usages = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> e : tables.entrySet()) {
+            for (String table : e.getValue()) {
+                usages.add(e.getKey() + " -> " + table);
+            }
+        }
+        return usages;
+    }
+}
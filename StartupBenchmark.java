@@ -0,0 +1,181 @@
+package shujiaw;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javafx.application.Platform;
+
+/**
+ * Measures cold start, with and without the AppCDS archive, in fresh JVMs.
+ * <pre>
+ * StartupBenchmark &lt;问卷星.csv&gt; [-runs 5] [-archive target/app.jsa] [-gui]
+ *                  [-conf conf.properties] [-applicants applicants.xlsx] [-assessments assessments.xls]
+ * </pre>
+ * Each run starts a new JVM and reports, counted from JVM start: the first converted data row of a headless
+ * conversion ({@code first-row-ms}) and, with {@code -gui}, the time until {@link MainApp}'s window is shown
+ * ({@code first-window-ms}). The median of each is printed per configuration.
+ * <p>
+ * {@code -train} runs one conversion and the {@link ClassPreloader} warm-up in this JVM; the {@code appcds} build
+ * profile runs it with {@code -XX:ArchiveClassesAtExit} to produce the archive.
+ */
+public class StartupBenchmark {
+
+    private static final String FIRST_ROW = "first-row-ms=";
+    private static final String FIRST_WINDOW = "first-window-ms=";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args[0].startsWith("-")) {
+            System.err.println("用法：StartupBenchmark <问卷星.csv> [-runs n] [-archive app.jsa] [-gui] "
+                    + "[-conf conf.properties] [-applicants applicants.xlsx] [-assessments assessments.xls]");
+            System.exit(1);
+        }
+        List<String> options = Arrays.asList(args);
+        if (options.contains("-child") || options.contains("-train")) {
+            if (options.contains("-train")) {
+                ClassPreloader.warmUp();
+            }
+            firstRow(args[0], options);
+            return;
+        }
+
+        int runs = Integer.parseInt(option(options, "-runs", "5"));
+        File archive = new File(option(options, "-archive", "target/app.jsa"));
+        List<String> conversionArgs = new ArrayList<String>();
+        conversionArgs.add(args[0]);
+        for (String name : new String[]{"-conf", "-applicants", "-assessments"}) {
+            if (options.contains(name)) {
+                conversionArgs.add(name);
+                conversionArgs.add(option(options, name, null));
+            }
+        }
+        conversionArgs.add("-child");
+
+        // Baseline is the JDK's own default CDS archive, which every plain launch already uses
+        List<String> noArchive = Collections.emptyList();
+        List<String> withArchive = Arrays.asList("-XX:SharedArchiveFile=" + archive.getPath(), "-Xshare:auto");
+        System.out.printf("%-12s %16s %16s%n", "", FIRST_ROW, FIRST_WINDOW);
+        print("JDK CDS", runs, noArchive, conversionArgs, options.contains("-gui"));
+        if (archive.isFile()) {
+            print("AppCDS", runs, withArchive, conversionArgs, options.contains("-gui"));
+        } else {
+            System.out.println(archive + " 不存在，先用 mvn -Pappcds package 生成");
+        }
+    }
+
+    /**
+     * Called by {@link MainApp} once the window is shown. With {@code -Dstartup.trace=true} prints the time since JVM
+     * start, with {@code -Dstartup.exit=true} also closes the application.
+     */
+    static void windowShown() {
+        if (Boolean.getBoolean("startup.trace")) {
+            System.out.println(FIRST_WINDOW + sinceJvmStart());
+        }
+        if (Boolean.getBoolean("startup.exit")) {
+            Platform.exit();
+        }
+    }
+
+    private static void print(String label, int runs, List<String> jvmOptions, List<String> conversionArgs,
+                              boolean gui) throws IOException, InterruptedException {
+        List<Long> rows = new ArrayList<Long>();
+        List<Long> windows = new ArrayList<Long>();
+        for (int i = 0; i < runs; i++) {
+            rows.add(child(jvmOptions, StartupBenchmark.class.getName(), conversionArgs, FIRST_ROW));
+            if (gui) {
+                List<String> guiOptions = new ArrayList<String>(jvmOptions);
+                guiOptions.add("-Dstartup.trace=true");
+                guiOptions.add("-Dstartup.exit=true");
+                windows.add(child(guiOptions, Launcher.class.getName(), Collections.<String>emptyList(), FIRST_WINDOW));
+            }
+        }
+        System.out.printf("%-12s %16s %16s%n", label, median(rows), gui ? median(windows) : "-");
+    }
+
+    // Runs a fresh JVM on the same class path and returns the value it printed after the marker, or -1
+    private static long child(List<String> jvmOptions, String mainClass, List<String> args, String marker)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(args);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long value = -1;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(marker)) {
+                    value = Long.parseLong(line.substring(marker.length()).trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        process.waitFor();
+        return value;
+    }
+
+    // Converts into a temp directory and prints the time until the first data row is done
+    private static void firstRow(String input, List<String> options) throws IOException {
+        ConversionEngine engine = ConversionEngine.load(option(options, "-conf", "conf.properties"),
+                option(options, "-applicants", "applicants.xlsx"), option(options, "-assessments", "assessments.xls"));
+        File outputDir = Files.createTempDirectory("startup").toFile();
+        final long[] firstRow = {-1};
+        try {
+            engine.convert(input, outputDir.getPath(), new ConversionListener() {
+                @Override
+                public void onProgress(long rows, long bytesRead, long totalBytes) {
+                }
+
+                @Override
+                public void onError(ValidationError error) {
+                }
+
+                @Override
+                public void onFirstRow() {
+                    firstRow[0] = sinceJvmStart();
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            });
+        } finally {
+            File[] files = outputDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            outputDir.delete();
+        }
+        System.out.println(FIRST_ROW + firstRow[0]);
+    }
+
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        return sorted.isEmpty() ? -1 : sorted.get(sorted.size() / 2);
+    }
+
+    private static String option(List<String> options, String name, String defaultValue) {
+        int index = options.indexOf(name);
+        return index >= 0 && index + 1 < options.size() ? options.get(index + 1) : defaultValue;
+    }
+}
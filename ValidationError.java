@@ -0,0 +1,55 @@
+package shujiaw;
+
+/**
+ * 校验错误：一条错误对应输出文件中的一个单元格。
+ * <p>
+ * Row is the 1-based line number in the converted CSV (title and header lines included), column is the 0-based
+ * index of the truncated output column, so both can be used directly to locate the cell.
+ */
+public class ValidationError {
+
+    private final int row;
+    private final int column;
+    private final String header;
+    private final String rule;
+    private final String message;
+    private final String value;
+
+    public ValidationError(int row, int column, String header, String rule, String message, String value) {
+        this.row = row;
+        this.column = column;
+        this.header = header;
+        this.rule = rule;
+        this.message = message;
+        this.value = value;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "第" + row + "行[" + header + "]：" + message + (value == null || value.isEmpty() ? "" : "（" + value + "）");
+    }
+}
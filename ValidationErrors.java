@@ -0,0 +1,56 @@
+package shujiaw;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory index of the validation errors of one conversion, in the order they were found.
+ * The data cells stay clean; the errors are kept here and written to a side file next to the converted CSV.
+ */
+public class ValidationErrors {
+
+    private final List<ValidationError> errors = new ArrayList<ValidationError>();
+    private final BitSet rowsWithErrors = new BitSet();
+
+    public void add(ValidationError error) {
+        errors.add(error);
+        rowsWithErrors.set(error.getRow());
+    }
+
+    public int size() {
+        return errors.size();
+    }
+
+    public boolean isEmpty() {
+        return errors.isEmpty();
+    }
+
+    public boolean hasErrors(int row) {
+        return rowsWithErrors.get(row);
+    }
+
+    public int getRowCount() {
+        return rowsWithErrors.cardinality();
+    }
+
+    public List<ValidationError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public void writeCsv(String fileName, Charset charset) throws IOException {
+        CsvWriter writer = new CsvWriter(fileName, charset);
+        try {
+            writer.writeRow("行", "列", "字段", "规则", "错误信息", "原值");
+            for (ValidationError error : errors) {
+                writer.writeRow(String.valueOf(error.getRow()), String.valueOf(error.getColumn() + 1), error.getHeader(),
+                        error.getRule(), error.getMessage(), error.getValue());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
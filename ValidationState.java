@@ -0,0 +1,165 @@
+package shujiaw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上次转换的结果：每行原始内容的哈希 -> 转换后的单元格和错误。
+ * <p>
+ * A row is validated from its own cells and the engine's reference data only ({@code Depend} rules look at other
+ * columns of the same row), so a row whose raw content hash is unchanged under the same engine fingerprint gets the
+ * same output and the same errors, and can be taken from here instead of being validated again.
+ */
+class ValidationState {
+
+    private static final int MAGIC = 0x53514856;
+    private static final int VERSION = 1;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long engineFingerprint;
+    private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+
+    ValidationState(long engineFingerprint) {
+        this.engineFingerprint = engineFingerprint;
+    }
+
+    Entry get(long hash) {
+        return entries.get(hash);
+    }
+
+    void put(long hash, Entry entry) {
+        entries.put(hash, entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * 64-bit FNV-1a over the cells, each cell terminated so that {"ab","c"} and {"a","bc"} differ.
+     */
+    static long hash(String[] cells) {
+        long hash = FNV_OFFSET;
+        for (String cell : cells) {
+            if (cell != null) {
+                for (int i = 0; i < cell.length(); i++) {
+                    char c = cell.charAt(i);
+                    hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+                    hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+                }
+            }
+            hash = (hash ^ 0xFFFF) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes {@code value} into {@code hash}, for fingerprints built from several hashes.
+     */
+    static long combine(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    /**
+     * @return the stored state, or an empty one if there is none or it was written under other rules or reference data
+     */
+    static ValidationState read(File file, long engineFingerprint) {
+        ValidationState state = new ValidationState(engineFingerprint);
+        if (!file.isFile()) {
+            return state;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != engineFingerprint) {
+                    return state;
+                }
+                int count = in.readInt();
+                for (int n = 0; n < count; n++) {
+                    long hash = in.readLong();
+                    String[] cells = new String[in.readInt()];
+                    for (int i = 0; i < cells.length; i++) {
+                        cells[i] = in.readUTF();
+                    }
+                    int errorCount = in.readInt();
+                    List<ValidationError> errors = new ArrayList<ValidationError>(errorCount);
+                    for (int i = 0; i < errorCount; i++) {
+                        // Row is assigned again when the entry is reused
+                        errors.add(new ValidationError(0, in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()));
+                    }
+                    state.put(hash, new Entry(cells, errors));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Truncated or unreadable, validate everything again
+            return new ValidationState(engineFingerprint);
+        }
+        return state;
+    }
+
+    void write(File file) throws IOException {
+        // A unique temporary file in the same directory, so conversions saving the same state at once never share it
+        Path temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(engineFingerprint);
+                out.writeInt(entries.size());
+                for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+                    out.writeLong(e.getKey());
+                    String[] cells = e.getValue().cells;
+                    out.writeInt(cells.length);
+                    for (String cell : cells) {
+                        out.writeUTF(cell == null ? "" : cell);
+                    }
+                    List<ValidationError> errors = e.getValue().errors;
+                    out.writeInt(errors.size());
+                    for (ValidationError error : errors) {
+                        out.writeInt(error.getColumn());
+                        out.writeUTF(error.getHeader() == null ? "" : error.getHeader());
+                        out.writeUTF(error.getRule() == null ? "" : error.getRule());
+                        out.writeUTF(error.getMessage() == null ? "" : error.getMessage());
+                        out.writeUTF(error.getValue() == null ? "" : error.getValue());
+                    }
+                }
+            }
+            // Replace the old state only once the new one is complete
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("无法保存校验状态：" + file, e);
+        }
+    }
+
+    static class Entry {
+        final String[] cells;
+        final List<ValidationError> errors;
+
+        Entry(String[] cells, List<ValidationError> errors) {
+            this.cells = cells;
+            this.errors = errors.isEmpty() ? Collections.<ValidationError>emptyList() : errors;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package shujiaw;
+
+import com.opencsv.CSVReader;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 把修订后的CSV生成上报用的XML：{@code <XMLDATA><MAIN><SQLIST><SQ>...</SQ></SQLIST></MAIN></XMLDATA>}.
+ * <p>
+ * The CSV is read row by row and written through a StAX writer, so memory use does not depend on the file size and
+ * values are escaped properly. Line 2 of the CSV holds the element names, data starts on line 3, as written by
+ * {@link CsvConverter}.
+ */
+public class XmlGenerator {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_INTERVAL = 100;
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    /**
+     * @return the number of {@code <SQ>} elements written, or -1 if the listener cancelled the generation
+     */
+    public long generate(String csvPath, String xmlPath, ConversionListener listener) throws IOException {
+        File csvFile = new File(csvPath);
+        long totalBytes = csvFile.length();
+        CountingInputStream in = new CountingInputStream(new FileInputStream(csvFile));
+        CSVReader reader = new CSVReader(new InputStreamReader(in, "gbk"));
+        FileChannel channel = FileChannel.open(Paths.get(xmlPath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+                BUFFER_SIZE);
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out);
+            writer.writeStartDocument("UTF-8", "1.0");
+            newLine(writer);
+            writer.writeStartElement("XMLDATA");
+            newLine(writer);
+            writer.writeStartElement("MAIN");
+            newLine(writer);
+            writer.writeStartElement("SQLIST");
+            newLine(writer);
+
+            String[] headers = {};
+            long line = 0;
+            long rows = 0;
+            String[] values;
+            while ((values = reader.readNext()) != null) {
+                line++;
+                if (line == 2) {
+                    headers = values;
+                } else if (line > 2) {
+                    if (listener.isCancelled()) {
+                        return -1;
+                    }
+                    writeRow(writer, headers, values);
+                    if (++rows % PROGRESS_INTERVAL == 0) {
+                        listener.onProgress(rows, in.getCount(), totalBytes);
+                    }
+                }
+            }
+
+            writer.writeEndElement();
+            newLine(writer);
+            writer.writeEndElement();
+            newLine(writer);
+            writer.writeEndElement();
+            newLine(writer);
+            writer.writeEndDocument();
+            writer.close();
+            listener.onProgress(rows, totalBytes, totalBytes);
+            return rows;
+        } catch (XMLStreamException e) {
+            throw new IOException("生成XML失败：" + e.getMessage(), e);
+        } finally {
+            reader.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Writes one {@code <SQ>} element, one child per line. Also used by ReadCSV2 and ParallelCsvToXml, so all
+     * generators write the same bytes.
+     */
+    public static void writeRow(XMLStreamWriter writer, String[] headers, String[] values) throws XMLStreamException {
+        writer.writeStartElement("SQ");
+        newLine(writer);
+        int count = Math.min(headers.length, values.length);
+        for (int i = 0; i < count; i++) {
+            writer.writeStartElement(headers[i]);
+            writer.writeCharacters(values[i]);
+            writer.writeEndElement();
+            newLine(writer);
+        }
+        writer.writeEndElement();
+        newLine(writer);
+    }
+
+    // One element per line with the platform line separator, as ReadCSV2's println output had
+    private static void newLine(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters(NEW_LINE);
+    }
+}
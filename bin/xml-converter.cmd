@@ -0,0 +1,34 @@
+@echo off
+rem 启动转换工具。target\app.jsa（mvn -Pappcds package 生成）存在时使用AppCDS归档，
+rem 归档和当前jar不匹配时JVM会忽略它，照常启动。
+rem   xml-converter.cmd                   图形界面
+rem   xml-converter.cmd batch <目录> ...   BatchConverter
+rem   xml-converter.cmd bench <问卷星.csv>  StartupBenchmark
+setlocal
+set DIR=%~dp0..
+for %%I in ("%DIR%") do set DIR=%%~fI
+set JAR=%DIR%\target\XML_Converter-0.0.1-SNAPSHOT.jar
+set ARCHIVE=%DIR%\target\app.jsa
+
+set CDS=
+if exist "%ARCHIVE%" set CDS=-XX:SharedArchiveFile="%ARCHIVE%" -Xshare:auto
+
+set MAIN=shujiaw.Launcher
+if "%1"=="batch" (
+    set MAIN=shujiaw.BatchConverter
+    shift
+)
+if "%1"=="bench" (
+    set MAIN=shujiaw.StartupBenchmark
+    shift
+)
+
+set ARGS=
+:collect
+if "%~1"=="" goto run
+set ARGS=%ARGS% %1
+shift
+goto collect
+
+:run
+java %CDS% %JAVA_OPTS% -cp "%JAR%" %MAIN% %ARGS%
@@ -0,0 +1,22 @@
+#!/bin/sh
+# 启动转换工具。target/app.jsa（mvn -Pappcds package 生成）存在时使用AppCDS归档，
+# 归档和当前jar不匹配时JVM会忽略它，照常启动。
+#   xml-converter.sh                   图形界面
+#   xml-converter.sh batch <目录> ...   BatchConverter
+#   xml-converter.sh bench <问卷星.csv>  StartupBenchmark
+DIR=$(cd "$(dirname "$0")/.." && pwd)
+JAR="$DIR/target/XML_Converter-0.0.1-SNAPSHOT.jar"
+ARCHIVE="$DIR/target/app.jsa"
+
+CDS=""
+if [ -f "$ARCHIVE" ]; then
+    CDS="-XX:SharedArchiveFile=$ARCHIVE -Xshare:auto"
+fi
+
+MAIN=shujiaw.Launcher
+case "$1" in
+    batch) MAIN=shujiaw.BatchConverter; shift ;;
+    bench) MAIN=shujiaw.StartupBenchmark; shift ;;
+esac
+
+exec java $CDS $JAVA_OPTS -cp "$JAR" $MAIN "$@"
@@ -1,53 +1,86 @@
-import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.JsonSchema;
-import com.networknt.schema.SchemaValidatorsConfig;
 import com.networknt.schema.ValidationMessage;
-import com.networknt.schema.SpecVersion.VersionFlag;
-import com.networknt.schema.SchemaLocation;
-import com.networknt.schema.SchemaId;
-import com.networknt.schema.InputFormat;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * <pre>
+ * SchemaValidator [schema.json | folder ...]                      check schemas against the Draft 2020-12 meta-schema
+ * SchemaValidator -schema schema.json -data records.ndjson ...    validate record files against a schema
+ * </pre>
+ * Without arguments checks {@code your-schema.json}.
+ */
 public class SchemaValidator {
     public static void main(String[] args) throws Exception {
-        // 1. Read the candidate schema file (as JSON text)
-        String schemaContent = Files.readString(Paths.get("your-schema.json"));
-
-        // 2. Create a factory for Draft 2020-12 (fallback dialect if $schema is absent)
-        JsonSchemaFactory factory = JsonSchemaFactory.getInstance(VersionFlag.V202012);
-        // :contentReference[oaicite:7]{index=7}
-
-        // 3. Build default validator configuration
-        SchemaValidatorsConfig config = SchemaValidatorsConfig.builder().build();
-        // (enable format assertions if desired via builder.setFormatAssertionsEnabled(true)) :contentReference[oaicite:8]{index=8}
+        List<Path> schemaFiles = new ArrayList<>();
+        List<Path> dataFiles = new ArrayList<>();
+        Path recordSchema = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-schema") && i + 1 < args.length) {
+                recordSchema = Paths.get(args[++i]);
+            } else if (args[i].equals("-data")) {
+                while (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                    dataFiles.add(Paths.get(args[++i]));
+                }
+            } else {
+                schemaFiles.addAll(jsonFiles(Paths.get(args[i])));
+            }
+        }
+        if (recordSchema == null && schemaFiles.isEmpty()) {
+            schemaFiles.add(Paths.get("your-schema.json"));
+        }
 
-        // 4. Load the Draft 2020-12 Meta-Schema from classpath
-        JsonSchema metaSchema = factory.getSchema(
-            SchemaLocation.of(SchemaId.V202012),
-            config
-        );
-        // :contentReference[oaicite:9]{index=9}
+        // Factory and meta-schema are built once for every file below
+        try (SchemaValidationEngine engine = new SchemaValidationEngine()) {
+            int invalidSchemas = 0;
+            for (Path file : schemaFiles) {
+                Set<ValidationMessage> errors = engine.checkSchema(new String(Files.readAllBytes(file), "UTF-8"));
+                if (errors.isEmpty()) {
+                    System.out.println("✓ " + file + " is valid against Draft 2020-12 Meta-Schema");
+                } else {
+                    invalidSchemas++;
+                    System.err.println("✗ " + file + " schema validation errors:");
+                    errors.forEach(vm ->
+                        System.err.printf("  [%s] %s (at %s)%n",
+                            vm.getType(), vm.getMessage(), vm.getInstanceLocation())
+                    );
+                }
+            }
+            if (schemaFiles.size() > 1) {
+                System.out.printf("%d schemas checked, %d invalid%n", schemaFiles.size(), invalidSchemas);
+            }
 
-        // 5. Validate the schema content against the Meta-Schema
-        Set<ValidationMessage> errors = metaSchema.validate(
-            schemaContent,
-            InputFormat.JSON,
-            // optional: executionContext -> executionContext.getExecutionConfig().setFormatAssertionsEnabled(true)
-        );
-        // :contentReference[oaicite:10]{index=10}
+            if (recordSchema != null) {
+                JsonSchema schema = engine.compile(recordSchema);
+                for (Path data : dataFiles) {
+                    long start = System.nanoTime();
+                    SchemaValidationEngine.Report report = engine.validate(schema, data);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%s: %.1f s, %.0f records/s%n", data, seconds, report.getRecords() / seconds);
+                    report.print(System.out);
+                }
+            }
+        }
+    }
 
-        // 6. Report results
-        if (errors.isEmpty()) {
-            System.out.println("✓ Schema is valid against Draft 2020-12 Meta-Schema");
-        } else {
-            System.err.println("✗ Schema validation errors:");
-            errors.forEach(vm ->
-                System.err.printf("  [%s] %s (at %s)%n",
-                    vm.getType(), vm.getMessage(), vm.getPath())
-            );
+    private static List<Path> jsonFiles(Path path) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.json")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
         }
+        return files;
     }
 }
@@ -1,43 +1,23 @@
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProcedureScanner {
-    private static final Pattern CALL_PATTERN = Pattern.compile("\\bCALL\\s+(CRDW|CRDB)\\.([A-Za-z0-9_]+)\\b", Pattern.CASE_INSENSITIVE);
-
-    // Identifier supporting quoted ("My Table") and unquoted (SCHEMA.TABLE) names
-    private static final String IDENTIFIER = "(?:\"[^\"]+\"|[A-Za-z0-9_]+)(?:\\.(?:\"[^\"]+\"|[A-Za-z0-9_]+))*";
-    private static final Pattern SELECT_FROM_PATTERN = Pattern.compile("\\bFROM\\s+(?!\\()((?:" + IDENTIFIER + "\s*,\s*)*" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE);
-String regexAllWithAlias =
-    "(?i)"                       // case‑insensitive
-  + "(?:\\bfrom\\s*|"           // either start at "from "
-  +   "\\G\\s*,\\s*)"           // or continue at end of last match + a comma
-  + "([A-Za-z_]\\w*"            // 1) capture the table name...
-  +   "(?:\\.[A-Za-z_]\\w*)?"   //    optionally schema‑qualified
-  + ")"                         
-  + "(?:\\s+(?:as\\s+)?[A-Za-z_]\\w*)?";  // 2) optionally match " AS alias" or " alias"
-
-
-Pattern p2 = Pattern.compile(regexAll);
-    private static final Pattern JOIN_PATTERN        = Pattern.compile("\\bJOIN\\s+(?!\\()(" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE);
-    private static final Pattern INSERT_INTO_PATTERN= Pattern.compile("\\bINSERT\\s+INTO\\s+(" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE);
-    private static final Pattern UPDATE_PATTERN     = Pattern.compile("\\bUPDATE\\s+(" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE);
-    private static final Pattern DELETE_FROM_PATTERN= Pattern.compile("\\bDELETE\\s+FROM\\s+(" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE);
-    private static final Pattern MERGE_INTO_PATTERN  = Pattern.compile("\\bMERGE\\s+INTO\\s+(" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE);
-    private static final Pattern SELECT_INTO_FROM_PATTERN = Pattern.compile("\\bSELECT\\s+.+?\\s+INTO\\s+.+?\\s+FROM\\s+(" + IDENTIFIER + ")", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    private static final Pattern TABLE_FUNCTION_PATTERN = Pattern.compile("\\bFROM\\s+TABLE\\s*\\(([^)]+)\\)", Pattern.CASE_INSENSITIVE);
-    private static final Pattern DYNAMIC_SQL_PATTERN= Pattern.compile("\\bEXECUTE\\s+IMMEDIATE\\b", Pattern.CASE_INSENSITIVE);
-
     public static Map<String, Set<String>> scanProcedures(String folderPath, List<String> procedureNames) throws IOException {
-        Map<String, String> sqlFiles = loadSqlFiles(folderPath);
+        Path folder = Paths.get(folderPath);
+        Map<String, Path> sqlFiles = listSqlFiles(folder);
+        ScanCache cache = ScanCache.load(folder.resolve(ScanCache.FILE_NAME));
+        Map<String, SqlScan> scans = scanReachable(procedureNames, sqlFiles, cache);
+        saveCache(cache, sqlFiles);
+        CallGraph graph = new CallGraph(scans);
+
         Map<String, Set<String>> procedureCalls = new HashMap<>();
         Set<String> allFoundProcedures = new HashSet<>();
 
         for (String procedure : procedureNames) {
             if (sqlFiles.containsKey(procedure)) {
-                Set<String> nested = new HashSet<>();
-                findAllNestedProcedures(procedure, sqlFiles, nested);
+                Set<String> nested = new HashSet<>(graph.callees(procedure));
                 procedureCalls.put(procedure, nested);
                 allFoundProcedures.add(procedure);
                 allFoundProcedures.addAll(nested);
@@ -47,86 +27,114 @@ Pattern p2 = Pattern.compile(regexAll);
         System.out.println("All found stored procedures: " + allFoundProcedures);
 
         for (String proc : allFoundProcedures) {
-            if (sqlFiles.containsKey(proc)) {
-                String content = sqlFiles.get(proc);
-                Set<String> usages = findTableUsages(content);
-                boolean dynamic = hasDynamicSQL(content);
-                System.out.println("Procedure: " + proc + (dynamic ? " [dynamic SQL]" : "") + " uses: " + usages);
-            }
+            SqlScan scan = scans.get(proc);
+            System.out.println("Procedure: " + proc + (scan.hasDynamicSql() ? " [dynamic SQL]" : "") + " uses: " + scan.getUsages());
         }
+        System.out.println("Scanned " + scans.size() + " of " + sqlFiles.size() + " files, "
+                + cache.getHits() + " from cache, " + cache.getMisses() + " parsed");
 
         return procedureCalls;
     }
 
-    private static Map<String, String> loadSqlFiles(String folderPath) throws IOException {
-        Map<String, String> sqlFiles = new HashMap<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(folderPath), "*.sql")) {
+    /**
+     * Scans every procedure in the folder, through the scan cache, and builds the call graph and table index over all
+     * of them for impact analysis.
+     */
+    public static CallGraph buildCallGraph(String folderPath) throws IOException {
+        Path folder = Paths.get(folderPath);
+        Map<String, Path> sqlFiles = listSqlFiles(folder);
+        ScanCache cache = ScanCache.load(folder.resolve(ScanCache.FILE_NAME));
+        Map<String, SqlScan> scans = new ConcurrentHashMap<>();
+        scanAll(sqlFiles.keySet(), sqlFiles, cache, scans);
+        saveCache(cache, sqlFiles);
+        return new CallGraph(scans);
+    }
+
+    // Only lists the files; nothing is read until a procedure is reached from procedureNames
+    private static Map<String, Path> listSqlFiles(Path folder) throws IOException {
+        Map<String, Path> sqlFiles = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.sql")) {
             for (Path path : stream) {
                 String name = path.getFileName().toString().replaceFirst("\\.sql$", "");
-                sqlFiles.put(name, Files.readString(path));
+                sqlFiles.put(name, path);
             }
         }
         return sqlFiles;
     }
 
-    private static void findAllNestedProcedures(String proc, Map<String, String> sqlFiles, Set<String> result) {
-        if (!sqlFiles.containsKey(proc)) return;
-        Set<String> direct = findNestedProcedures(sqlFiles.get(proc), sqlFiles.keySet());
-        for (String called : direct) {
-            if (result.add(called)) {
-                findAllNestedProcedures(called, sqlFiles, result);
+    /**
+     * Scans the requested procedures and everything they call, one call level at a time, each level in parallel.
+     */
+    private static Map<String, SqlScan> scanReachable(List<String> procedureNames, Map<String, Path> sqlFiles, ScanCache cache) throws IOException {
+        Map<String, SqlScan> scans = new ConcurrentHashMap<>();
+        Set<String> level = new HashSet<>();
+        for (String procedure : procedureNames) {
+            if (sqlFiles.containsKey(procedure)) level.add(procedure);
+        }
+        while (!level.isEmpty()) {
+            scanAll(level, sqlFiles, cache, scans);
+            Set<String> next = new HashSet<>();
+            for (String proc : level) {
+                for (String called : scans.get(proc).getCalls()) {
+                    if (sqlFiles.containsKey(called) && !scans.containsKey(called)) next.add(called);
+                }
             }
+            level = next;
         }
+        return scans;
     }
 
-    private static Set<String> findNestedProcedures(String sql, Set<String> known) {
-        Set<String> out = new HashSet<>();
-        String clean = removeCommentsAndCTEs(sql);
-        Matcher m = CALL_PATTERN.matcher(clean);
-        while (m.find()) {
-            String called = m.group(2);
-            if (known.contains(called)) out.add(called);
+    private static void scanAll(Collection<String> procs, Map<String, Path> sqlFiles, ScanCache cache, Map<String, SqlScan> scans) throws IOException {
+        try {
+            procs.parallelStream().forEach(proc -> {
+                try {
+                    scans.put(proc, cache.scan(sqlFiles.get(proc)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return out;
-    }
-
-    private static Set<String> findTableUsages(String sql) {
-        Set<String> usages = new HashSet<>();
-        String clean = removeCommentsAndCTEs(sql);
-        extract(clean, SELECT_FROM_PATTERN, "SELECT", usages);
-        extract(clean, SELECT_INTO_FROM_PATTERN, "SELECT", usages);
-        extract(clean, JOIN_PATTERN,        "JOIN",   usages);
-        extract(clean, INSERT_INTO_PATTERN,"INSERT", usages);
-        extract(clean, UPDATE_PATTERN,     "UPDATE", usages);
-        extract(clean, DELETE_FROM_PATTERN,"DELETE", usages);
-        extract(clean, MERGE_INTO_PATTERN,  "MERGE",  usages);
-        extract(clean, TABLE_FUNCTION_PATTERN, "TABLE_FUNC", usages);
-        return usages;
     }
 
-    private static void extract(String sql, Pattern p, String op, Set<String> out) {
-        Matcher m = p.matcher(sql);
-        while (m.find()) {
-            String obj = m.group(1).trim();
-            if (!obj.isEmpty()) out.add(op + " -> " + obj);
+    private static void saveCache(ScanCache cache, Map<String, Path> sqlFiles) {
+        try {
+            cache.save(sqlFiles.values());
+        } catch (IOException e) {
+            // A read-only folder only costs the next run its cache
+            System.err.println("Could not write " + ScanCache.FILE_NAME + ": " + e);
         }
     }
 
-    private static String removeCommentsAndCTEs(String sql) {
-        // Strip CTEs at the start: WITH ... AS (...)
-        sql = sql.replaceAll("(?is)^\\s*WITH\\s+[\\s\\S]+?\\)\\s*", "");
-        // Strip block comments
-        sql = sql.replaceAll("(?s)/\\*.*?\\*/", "");
-        // Strip line comments
-        sql = sql.replaceAll("(?m)--.*$", "");
-        return sql;
-    }
-
-    private static boolean hasDynamicSQL(String sql) {
-        return DYNAMIC_SQL_PATTERN.matcher(removeCommentsAndCTEs(sql)).find();
+    private static Set<String> query(CallGraph graph, String option, String name) {
+        switch (option) {
+            case "-writes": return graph.writersTransitive(name);
+            case "-reads": return graph.readersTransitive(name);
+            case "-callers": return graph.callers(name);
+            case "-callees": return graph.callees(name);
+            case "-tablesWritten": return graph.tablesWritten(name);
+            case "-tablesRead": return graph.tablesRead(name);
+            default: throw new IllegalArgumentException("Unknown query " + option);
+        }
     }
 
+    /**
+     * Without arguments scans the configured procedures. With {@code <folder> <query> <name>} answers an impact query,
+     * query being -writes / -reads (procedures that write / read a table, transitively), -callers, -callees,
+     * -tablesWritten or -tablesRead.
+     */
     public static void main(String[] args) throws IOException {
+        if (args.length >= 3) {
+            CallGraph graph = buildCallGraph(args[0]);
+            long start = System.nanoTime();
+            Set<String> result = query(graph, args[1], args[2]);
+            System.out.printf("%s %s: %s (%.2f ms)%n", args[1], args[2], result, (System.nanoTime() - start) / 1e6);
+            for (Set<String> cycle : graph.cycles()) {
+                System.out.println("Call cycle: " + cycle);
+            }
+            return;
+        }
         String folderPath = "path/to/sql/folder";
         List<String> procedureNames = Arrays.asList("sp_123", "sp_456");
         scanProcedures(folderPath, procedureNames);